@@ -0,0 +1,567 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+// Accounts interned into integer slots with one primitive column per field, instead of a
+// map node, a PlayerData and an AtomicLong per player. Columns are allocated in fixed-size
+// chunks so growing never moves an account, which keeps balance updates lock-free.
+// Adding, renaming and removing accounts is synchronized.
+public class AccountStore {
+    
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    // Index entries hold slot + 1, so a zeroed table is empty
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+    private static final int MIN_INDEX_CAPACITY = 64;
+    
+    private volatile Chunk[] chunks;
+    // Slots below this have been handed out at least once
+    private volatile int limit;
+    private volatile int size;
+    private int[] freeSlots;
+    private int freeCount;
+    
+    // Open addressing over the uuid and the case-insensitive name, probing linearly
+    private volatile AtomicIntegerArray uuidIndex;
+    private volatile AtomicIntegerArray nameIndex;
+    private int uuidIndexUsed;
+    private int nameIndexUsed;
+    
+    private final AtomicInteger dirtyCount;
+    
+    public AccountStore() {
+        this.dirtyCount = new AtomicInteger();
+        reset();
+    }
+    
+    private void reset() {
+        chunks = new Chunk[0];
+        limit = 0;
+        size = 0;
+        freeSlots = new int[16];
+        freeCount = 0;
+        uuidIndex = new AtomicIntegerArray(MIN_INDEX_CAPACITY);
+        nameIndex = new AtomicIntegerArray(MIN_INDEX_CAPACITY);
+        uuidIndexUsed = 0;
+        nameIndexUsed = 0;
+        dirtyCount.set(0);
+    }
+    
+    public synchronized void clear() {
+        reset();
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Upper bound for iterating slots, check isUsed for each
+    public int limit() {
+        return limit;
+    }
+    
+    public boolean isUsed(int slot) {
+        return slot >= 0 && slot < limit && chunk(slot).names.get(slot & CHUNK_MASK) != null;
+    }
+    
+    private Chunk chunk(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+    
+    // -1 if there is no such account
+    public int find(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        AtomicIntegerArray table = uuidIndex;
+        int mask = table.length() - 1;
+        for (int i = hash(most, least) & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && holds(entry - 1, most, least)) {
+                return entry - 1;
+            }
+        }
+    }
+    
+    // Case-insensitive, -1 if nobody by that name has an account
+    public int findByName(String name) {
+        AtomicIntegerArray table = nameIndex;
+        int mask = table.length() - 1;
+        for (int i = nameHash(name) & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > 0 && name.equalsIgnoreCase(getName(entry - 1))) {
+                return entry - 1;
+            }
+        }
+    }
+    
+    // Whether the slot currently belongs to this uuid, it may have been freed and reused
+    public boolean holds(int slot, UUID uuid) {
+        return holds(slot, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+    
+    private boolean holds(int slot, long most, long least) {
+        if (slot >= limit) {
+            return false;
+        }
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        return chunk.names.get(offset) != null && chunk.uuidMost[offset] == most && chunk.uuidLeast[offset] == least;
+    }
+    
+    // Returns the existing slot if the uuid already has one, leaving it untouched
+    public synchronized int insert(UUID uuid, String name, long units) {
+        int existing = find(uuid);
+        if (existing >= 0) {
+            return existing;
+        }
+        
+        int slot = allocate();
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        chunk.uuidMost[offset] = uuid.getMostSignificantBits();
+        chunk.uuidLeast[offset] = uuid.getLeastSignificantBits();
+        chunk.balances.set(offset, units);
+        chunk.lastAccess[offset] = 0;
+        chunk.rendered.set(offset, null);
+        // Setting the name publishes the slot
+        chunk.names.set(offset, name);
+        
+        addToUuidIndex(slot);
+        addToNameIndex(slot, name);
+        size++;
+        return slot;
+    }
+    
+    // Creates the account or overwrites its name and balance
+    public synchronized int put(UUID uuid, String name, long units) {
+        int slot = find(uuid);
+        if (slot < 0) {
+            return insert(uuid, name, units);
+        }
+        rename(slot, name);
+        setUnits(slot, units);
+        return slot;
+    }
+    
+    public synchronized void rename(int slot, String name) {
+        String previous = getName(slot);
+        if (previous == null || previous.equals(name)) {
+            return;
+        }
+        removeFromNameIndex(slot, previous);
+        chunk(slot).names.set(slot & CHUNK_MASK, name);
+        addToNameIndex(slot, name);
+    }
+    
+    public synchronized void remove(int slot) {
+        String name = getName(slot);
+        if (name == null) {
+            return;
+        }
+        
+        removeFromUuidIndex(slot);
+        removeFromNameIndex(slot, name);
+        clearDirty(slot);
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        chunk.names.set(offset, null);
+        chunk.rendered.set(offset, null);
+        
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+    
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        
+        int slot = limit;
+        if ((slot >>> CHUNK_BITS) == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        limit = slot + 1;
+        return slot;
+    }
+    
+    // Column access, the slot has to be in use
+    
+    public UUID getUuid(int slot) {
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        return new UUID(chunk.uuidMost[offset], chunk.uuidLeast[offset]);
+    }
+    
+    // Null once the slot has been freed
+    public String getName(int slot) {
+        return chunk(slot).names.get(slot & CHUNK_MASK);
+    }
+    
+    public long getUnits(int slot) {
+        return chunk(slot).balances.get(slot & CHUNK_MASK);
+    }
+    
+    public void setUnits(int slot, long units) {
+        chunk(slot).balances.set(slot & CHUNK_MASK, units);
+    }
+    
+    // Detached copy of the account, null if the slot is free
+    public DataManager.PlayerData snapshot(int slot) {
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        String name = chunk.names.get(offset);
+        if (name == null) {
+            return null;
+        }
+        return DataManager.PlayerData.fromUnits(new UUID(chunk.uuidMost[offset], chunk.uuidLeast[offset]),
+            name, chunk.balances.get(offset));
+    }
+    
+    public List<DataManager.PlayerData> snapshotAll() {
+        List<DataManager.PlayerData> all = new ArrayList<>(size);
+        for (int slot = 0; slot < limit; slot++) {
+            DataManager.PlayerData data = snapshot(slot);
+            if (data != null) {
+                all.add(data);
+            }
+        }
+        return all;
+    }
+    
+    // Highest balances first, keeps only the current top in a min-heap while scanning the balance column
+    public List<DataManager.PlayerData> top(int limit) {
+        PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingLong(this::getUnits));
+        for (int slot = 0; slot < limit(); slot++) {
+            if (!isUsed(slot)) {
+                continue;
+            }
+            if (top.size() < limit) {
+                top.add(slot);
+            } else if (limit > 0 && getUnits(slot) > getUnits(top.peek())) {
+                top.poll();
+                top.add(slot);
+            }
+        }
+        
+        List<DataManager.PlayerData> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            DataManager.PlayerData data = snapshot(top.poll());
+            if (data != null) {
+                result.add(data);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+    
+    public int countRicher(long units) {
+        int count = 0;
+        for (int slot = 0; slot < limit(); slot++) {
+            if (isUsed(slot) && getUnits(slot) > units) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    // Returns the balance before the update
+    public long addClamped(int slot, long delta, long max) {
+        AtomicLongArray balances = chunk(slot).balances;
+        int offset = slot & CHUNK_MASK;
+        while (true) {
+            long current = balances.get(offset);
+            if (balances.compareAndSet(offset, current, clamp(current, delta, max))) {
+                return current;
+            }
+        }
+    }
+    
+    // Returns the balance before the debit, or -1 if it didn't cover the amount
+    public long debitIfSufficient(int slot, long amount) {
+        AtomicLongArray balances = chunk(slot).balances;
+        int offset = slot & CHUNK_MASK;
+        while (true) {
+            long current = balances.get(offset);
+            if (current < amount) {
+                return -1;
+            }
+            if (balances.compareAndSet(offset, current, current - amount)) {
+                return current;
+            }
+        }
+    }
+    
+    // Returns the balance before the credit, or -1 if it would go over max
+    public long creditIfRoom(int slot, long amount, long max) {
+        AtomicLongArray balances = chunk(slot).balances;
+        int offset = slot & CHUNK_MASK;
+        while (true) {
+            long current = balances.get(offset);
+            if (current > max - amount) {
+                return -1;
+            }
+            if (balances.compareAndSet(offset, current, current + amount)) {
+                return current;
+            }
+        }
+    }
+    
+    static long clamp(long current, long delta, long max) {
+        long next = current + delta;
+        // Overflow saturates instead of wrapping
+        if (((current ^ next) & (delta ^ next)) < 0) {
+            next = delta > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        return Math.max(0, Math.min(next, max));
+    }
+    
+    public long getLastAccess(int slot) {
+        return chunk(slot).lastAccess[slot & CHUNK_MASK];
+    }
+    
+    public void touch(int slot) {
+        chunk(slot).lastAccess[slot & CHUNK_MASK] = System.currentTimeMillis();
+    }
+    
+    // Cached rendering of the balance, see BalanceFormatter
+    public BalanceFormatter.Rendered render(int slot, BalanceFormatter formatter) {
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        BalanceFormatter.Rendered previous = chunk.rendered.get(offset);
+        BalanceFormatter.Rendered current = formatter.render(chunk.balances.get(offset), previous);
+        if (current != previous) {
+            chunk.rendered.set(offset, current);
+        }
+        return current;
+    }
+    
+    // Dirty bits, one per slot, for the write-behind flusher
+    
+    public void markDirty(int slot) {
+        AtomicLongArray dirty = chunk(slot).dirty;
+        int word = (slot & CHUNK_MASK) >>> 6;
+        long bit = 1L << (slot & 63);
+        while (true) {
+            long current = dirty.get(word);
+            if ((current & bit) != 0) {
+                return;
+            }
+            if (dirty.compareAndSet(word, current, current | bit)) {
+                dirtyCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+    
+    public boolean clearDirty(int slot) {
+        AtomicLongArray dirty = chunk(slot).dirty;
+        int word = (slot & CHUNK_MASK) >>> 6;
+        long bit = 1L << (slot & 63);
+        while (true) {
+            long current = dirty.get(word);
+            if ((current & bit) == 0) {
+                return false;
+            }
+            if (dirty.compareAndSet(word, current, current & ~bit)) {
+                dirtyCount.decrementAndGet();
+                return true;
+            }
+        }
+    }
+    
+    public boolean isDirty(int slot) {
+        return (chunk(slot).dirty.get((slot & CHUNK_MASK) >>> 6) & (1L << (slot & 63))) != 0;
+    }
+    
+    public int dirtyCount() {
+        return dirtyCount.get();
+    }
+    
+    public void forEachDirty(IntConsumer action) {
+        Chunk[] current = chunks;
+        for (int c = 0; c < current.length; c++) {
+            AtomicLongArray dirty = current[c].dirty;
+            for (int word = 0; word < dirty.length(); word++) {
+                long bits = dirty.get(word);
+                while (bits != 0) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    action.accept((c << CHUNK_BITS) | (word << 6) | bit);
+                }
+            }
+        }
+    }
+    
+    // Index maintenance, always called with the store locked
+    
+    private void addToUuidIndex(int slot) {
+        if ((uuidIndexUsed + 1) * 2 > uuidIndex.length()) {
+            uuidIndex = rebuildUuidIndex();
+        }
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        if (placeEntry(uuidIndex, hash(chunk.uuidMost[offset], chunk.uuidLeast[offset]), slot)) {
+            uuidIndexUsed++;
+        }
+    }
+    
+    private void removeFromUuidIndex(int slot) {
+        Chunk chunk = chunk(slot);
+        int offset = slot & CHUNK_MASK;
+        removeEntry(uuidIndex, hash(chunk.uuidMost[offset], chunk.uuidLeast[offset]), slot);
+    }
+    
+    // The latest account to take a name owns its index entry
+    private void addToNameIndex(int slot, String name) {
+        if ((nameIndexUsed + 1) * 2 > nameIndex.length()) {
+            nameIndex = rebuildNameIndex();
+        }
+        
+        AtomicIntegerArray table = nameIndex;
+        int mask = table.length() - 1;
+        int reusable = -1;
+        for (int i = nameHash(name) & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == EMPTY) {
+                if (reusable >= 0) {
+                    table.set(reusable, slot + 1);
+                } else {
+                    table.set(i, slot + 1);
+                    nameIndexUsed++;
+                }
+                return;
+            }
+            if (entry == REMOVED) {
+                if (reusable < 0) {
+                    reusable = i;
+                }
+            } else if (name.equalsIgnoreCase(getName(entry - 1))) {
+                table.set(i, slot + 1);
+                return;
+            }
+        }
+    }
+    
+    private void removeFromNameIndex(int slot, String name) {
+        removeEntry(nameIndex, nameHash(name), slot);
+    }
+    
+    // True if a never-used entry was taken
+    private static boolean placeEntry(AtomicIntegerArray table, int hash, int slot) {
+        int mask = table.length() - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == EMPTY || entry == REMOVED) {
+                table.set(i, slot + 1);
+                return entry == EMPTY;
+            }
+        }
+    }
+    
+    private static void removeEntry(AtomicIntegerArray table, int hash, int slot) {
+        int mask = table.length() - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == EMPTY) {
+                return;
+            }
+            if (entry == slot + 1) {
+                table.set(i, REMOVED);
+                return;
+            }
+        }
+    }
+    
+    // Rebuilt into a fresh table, which also drops removed entries. Readers still
+    // probing the old one may miss new accounts but never get a wrong slot.
+    private AtomicIntegerArray rebuildUuidIndex() {
+        AtomicIntegerArray table = new AtomicIntegerArray(indexCapacity());
+        int used = 0;
+        for (int slot = 0; slot < limit; slot++) {
+            if (isUsed(slot)) {
+                Chunk chunk = chunk(slot);
+                int offset = slot & CHUNK_MASK;
+                placeEntry(table, hash(chunk.uuidMost[offset], chunk.uuidLeast[offset]), slot);
+                used++;
+            }
+        }
+        uuidIndexUsed = used;
+        return table;
+    }
+    
+    private AtomicIntegerArray rebuildNameIndex() {
+        AtomicIntegerArray table = new AtomicIntegerArray(indexCapacity());
+        int used = 0;
+        for (int slot = 0; slot < limit; slot++) {
+            String name = getName(slot);
+            if (name != null) {
+                placeEntry(table, nameHash(name), slot);
+                used++;
+            }
+        }
+        nameIndexUsed = used;
+        return table;
+    }
+    
+    // At most a quarter full right after a rebuild
+    private int indexCapacity() {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < (size + 1) * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+    
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+    
+    // Matches equalsIgnoreCase without allocating a lower-cased copy
+    private static int nameHash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return h ^ (h >>> 16);
+    }
+    
+    private static final class Chunk {
+        private final long[] uuidMost = new long[CHUNK_SIZE];
+        private final long[] uuidLeast = new long[CHUNK_SIZE];
+        // A null name marks a free slot
+        private final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(CHUNK_SIZE);
+        // Fixed-point minor units, see Money
+        private final AtomicLongArray balances = new AtomicLongArray(CHUNK_SIZE);
+        private final AtomicLongArray dirty = new AtomicLongArray(CHUNK_SIZE / 64);
+        private final long[] lastAccess = new long[CHUNK_SIZE];
+        private final AtomicReferenceArray<BalanceFormatter.Rendered> rendered = new AtomicReferenceArray<>(CHUNK_SIZE);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,367 @@
+package dev.itzsiden.ecoplus;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Transactions as JSON lines in logs/audit.log. Recording only queues the entry in a bounded
+// buffer, a background thread formats and writes it and rotates the file by size and age,
+// keeping up to audit.max-files rotated files.
+public class AuditLog {
+    
+    private static final int DRAIN_BATCH = 1024;
+    
+    private final EcoPlus plugin;
+    private final Logger logger;
+    private final File folder;
+    private final File file;
+    private final BlockingQueue<Entry> buffer;
+    private final FullPolicy fullPolicy;
+    // Entries lost to a full buffer, written as one DROPPED entry once there is room
+    private final AtomicLong dropped;
+    private volatile boolean running;
+    private Thread thread;
+    
+    // Only touched by the writer thread
+    private Writer out;
+    private long openedAt;
+    private boolean failing;
+    
+    public AuditLog(EcoPlus plugin, int bufferSize, FullPolicy fullPolicy) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.folder = new File(plugin.getDataFolder(), "logs");
+        this.file = new File(folder, "audit.log");
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.fullPolicy = fullPolicy;
+        this.dropped = new AtomicLong();
+    }
+    
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "EcoPlus-Audit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    // Writes whatever is still buffered, then stops the writer thread
+    public void close() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+    
+    // Amounts and balances are in fixed-point units, see Money
+    public void balanceChanged(Type type, UUID uuid, String player, long amount, long before, long after) {
+        Entry entry = new Entry(type);
+        entry.uuid = uuid;
+        entry.player = player;
+        entry.amount = amount;
+        entry.before = before;
+        entry.after = after;
+        submit(entry);
+    }
+    
+    public void transfer(UUID fromUuid, String from, UUID toUuid, String to, long amount, long fromAfter, long toAfter) {
+        Entry entry = new Entry(Type.PAY);
+        entry.uuid = fromUuid;
+        entry.player = from;
+        entry.targetUuid = toUuid;
+        entry.target = to;
+        entry.amount = amount;
+        entry.after = fromAfter;
+        entry.targetAfter = toAfter;
+        submit(entry);
+    }
+    
+    // Bulk add/take and the scheduled jobs, type tells them apart
+    public void batch(Type type, int accounts, long credited, long debited, int skipped, int missing) {
+        Entry entry = new Entry(type);
+        entry.count = accounts;
+        entry.amount = credited;
+        entry.debited = debited;
+        entry.skipped = skipped;
+        entry.missing = missing;
+        submit(entry);
+    }
+    
+    private void submit(Entry entry) {
+        if (buffer.offer(entry)) {
+            return;
+        }
+        
+        switch (fullPolicy) {
+            case BLOCK:
+                try {
+                    while (running) {
+                        if (buffer.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                dropped.incrementAndGet();
+                break;
+            case DROP_OLDEST:
+                // Other producers compete for the freed space, keep evicting until this one fits
+                while (!buffer.offer(entry)) {
+                    if (buffer.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            default:
+                dropped.incrementAndGet();
+        }
+    }
+    
+    private void run() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        while (running || !buffer.isEmpty()) {
+            try {
+                // Wakes up at least once a second so an idle log still rotates by age
+                Entry first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, DRAIN_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            write(batch);
+            batch.clear();
+        }
+        closeFile();
+    }
+    
+    private void write(List<Entry> batch) {
+        long lost = dropped.getAndSet(0);
+        if (batch.isEmpty() && lost == 0 && out == null) {
+            return;
+        }
+        
+        try {
+            rotateIfNeeded();
+            if (out == null) {
+                openFile();
+            }
+            if (lost > 0) {
+                Entry entry = new Entry(Type.DROPPED);
+                entry.count = lost;
+                writeEntry(entry);
+            }
+            for (Entry entry : batch) {
+                writeEntry(entry);
+            }
+            out.flush();
+            failing = false;
+        } catch (IOException e) {
+            // Reported once per failure streak, the entries of this batch are lost
+            if (!failing) {
+                logger.severe("Failed to write " + file.getName() + ": " + e.getMessage());
+                failing = true;
+            }
+            closeFile();
+        }
+    }
+    
+    private void writeEntry(Entry entry) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("time").value(Instant.ofEpochMilli(entry.time).toString());
+        json.name("type").value(entry.type.name());
+        switch (entry.type) {
+            case PAY:
+                json.name("from").value(entry.player);
+                json.name("from_uuid").value(entry.uuid.toString());
+                json.name("to").value(entry.target);
+                json.name("to_uuid").value(entry.targetUuid.toString());
+                json.name("amount").value(units(entry.amount));
+                json.name("from_balance").value(units(entry.after));
+                json.name("to_balance").value(units(entry.targetAfter));
+                break;
+            case BATCH:
+            case INTEREST:
+            case TAX:
+            case DECAY:
+                json.name("accounts").value(entry.count);
+                json.name("credited").value(units(entry.amount));
+                json.name("debited").value(units(entry.debited));
+                json.name("skipped").value(entry.skipped);
+                json.name("missing").value(entry.missing);
+                break;
+            case DROPPED:
+                json.name("count").value(entry.count);
+                break;
+            default:
+                json.name("player").value(entry.player);
+                json.name("uuid").value(entry.uuid.toString());
+                json.name("amount").value(units(entry.amount));
+                json.name("before").value(units(entry.before));
+                json.name("after").value(units(entry.after));
+        }
+        json.endObject();
+        out.write('\n');
+    }
+    
+    // Exact decimal, the audit log shouldn't show rounding artifacts
+    private static BigDecimal units(long units) {
+        return BigDecimal.valueOf(units, 4).stripTrailingZeros();
+    }
+    
+    private void rotateIfNeeded() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        if (out == null) {
+            openedAt = firstEntryTime();
+        }
+        boolean tooLarge = file.length() >= settings.auditMaxFileSize * 1024L;
+        boolean tooOld = settings.auditRotateHours > 0
+            && System.currentTimeMillis() - openedAt >= TimeUnit.HOURS.toMillis(settings.auditRotateHours);
+        if (!tooLarge && !tooOld) {
+            return;
+        }
+        
+        closeFile();
+        String stamp = new SimpleDateFormat("yyyy-MM-dd-HHmmss").format(new Date());
+        File rotated = new File(folder, "audit-" + stamp + ".log");
+        for (int i = 1; rotated.exists(); i++) {
+            rotated = new File(folder, "audit-" + stamp + "-" + i + ".log");
+        }
+        Files.move(file.toPath(), rotated.toPath());
+        deleteOldFiles(settings.auditMaxFiles);
+    }
+    
+    // The file is started by its first entry, so that entry's time is its age. Creation times
+    // can't be used, many file systems report the last modification instead.
+    private long firstEntryTime() {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line != null) {
+                JsonReader json = new JsonReader(new StringReader(line));
+                json.beginObject();
+                if (json.nextName().equals("time")) {
+                    return Instant.parse(json.nextString()).toEpochMilli();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable, age it from now
+        }
+        return System.currentTimeMillis();
+    }
+    
+    private void deleteOldFiles(int maxFiles) {
+        File[] rotated = folder.listFiles((dir, name) -> name.startsWith("audit-") && name.endsWith(".log"));
+        if (maxFiles <= 0 || rotated == null || rotated.length <= maxFiles) {
+            return;
+        }
+        
+        Arrays.sort(rotated, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+        for (int i = 0; i < rotated.length - maxFiles; i++) {
+            if (!rotated[i].delete()) {
+                logger.warning("Failed to delete old audit log " + rotated[i].getName());
+            }
+        }
+    }
+    
+    private void openFile() throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        if (!file.exists()) {
+            openedAt = System.currentTimeMillis();
+        }
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+    
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close " + file.getName() + ": " + e.getMessage());
+        }
+        out = null;
+    }
+    
+    public enum Type {
+        ADD,
+        TAKE,
+        PAY,
+        BATCH,
+        INTEREST,
+        TAX,
+        DECAY,
+        DROPPED
+    }
+    
+    // What happens to a new entry when the buffer is full
+    public enum FullPolicy {
+        DROP,
+        DROP_OLDEST,
+        BLOCK;
+        
+        public static FullPolicy parse(String value, Logger logger) {
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown audit.full-policy '" + value + "', using drop");
+                return DROP;
+            }
+        }
+    }
+    
+    // Fields are shared between entry types, see writeEntry for which ones each uses.
+    // Filled in before it's queued, the queue makes them visible to the writer thread.
+    private static final class Entry {
+        private final long time;
+        private final Type type;
+        private UUID uuid;
+        private String player;
+        private long amount;
+        private long before;
+        private long after;
+        private UUID targetUuid;
+        private String target;
+        private long targetAfter;
+        private long debited;
+        private long count;
+        private int skipped;
+        private int missing;
+        
+        private Entry(Type type) {
+            this.time = System.currentTimeMillis();
+            this.type = type;
+        }
+    }
+}
\ No newline at end of file
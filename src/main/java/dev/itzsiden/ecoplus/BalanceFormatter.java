@@ -0,0 +1,85 @@
+package dev.itzsiden.ecoplus;
+
+import java.text.DecimalFormat;
+
+// Formatting settings read once from config. A new instance replaces this one on
+// reload, which also invalidates every string rendered by the old one.
+public class BalanceFormatter {
+    
+    private static final long[] SHORTHAND_DIVISORS = {1L, 1000L, 1000000L, 1000000000L, 1000000000000L};
+    private static final String[] SHORTHAND_SUFFIXES = {"", "k", "M", "B", "T"};
+    
+    private final int decimalPlaces;
+    private final boolean useSeparators;
+    // DecimalFormat isn't thread-safe, placeholders are requested from async threads too
+    private final ThreadLocal<DecimalFormat> decimalFormat;
+    private final ThreadLocal<StringBuilder> buffer;
+    
+    public BalanceFormatter(ConfigManager config) {
+        this.decimalPlaces = config.getDecimalPlaces();
+        this.useSeparators = config.useSeparators();
+        this.decimalFormat = ThreadLocal.withInitial(this::createDecimalFormat);
+        this.buffer = ThreadLocal.withInitial(() -> new StringBuilder(24));
+    }
+    
+    private DecimalFormat createDecimalFormat() {
+        DecimalFormat df = new DecimalFormat();
+        df.setMinimumFractionDigits(decimalPlaces);
+        df.setMaximumFractionDigits(decimalPlaces);
+        df.setGroupingUsed(useSeparators);
+        return df;
+    }
+    
+    public String format(double balance) {
+        return decimalFormat.get().format(balance);
+    }
+    
+    // One decimal and a k/M/B/T suffix, e.g. 12.5k
+    public String formatShorthand(double balance) {
+        int tier = 0;
+        while (tier < SHORTHAND_DIVISORS.length - 1 && Math.abs(balance) >= SHORTHAND_DIVISORS[tier + 1]) {
+            tier++;
+        }
+        
+        // Rounds half up like %.1f did
+        long tenths = Math.round(Math.abs(balance) * 10 / SHORTHAND_DIVISORS[tier]);
+        StringBuilder builder = buffer.get();
+        builder.setLength(0);
+        if (balance < 0) {
+            builder.append('-');
+        }
+        builder.append(tenths / 10).append('.').append(tenths % 10).append(SHORTHAND_SUFFIXES[tier]);
+        return builder.toString();
+    }
+    
+    // Reuses the previous result while neither the balance nor the formatter changed
+    public Rendered render(long units, Rendered previous) {
+        if (previous != null && previous.formatter == this && previous.units == units) {
+            return previous;
+        }
+        double balance = Money.toDouble(units);
+        return new Rendered(this, units, format(balance), formatShorthand(balance));
+    }
+    
+    public static final class Rendered {
+        private final BalanceFormatter formatter;
+        private final long units;
+        private final String formatted;
+        private final String shorthand;
+        
+        private Rendered(BalanceFormatter formatter, long units, String formatted, String shorthand) {
+            this.formatter = formatter;
+            this.units = units;
+            this.formatted = formatted;
+            this.shorthand = shorthand;
+        }
+        
+        public String getFormatted() {
+            return formatted;
+        }
+        
+        public String getShorthand() {
+            return shorthand;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Order-statistic treap over (balance, slot), richest first. Updates, rank
+// lookups and reading k entries from any offset are all O(log N + k).
+// Nodes are AccountStore slots, their fields live in parallel arrays.
+public class BalanceRanking {
+    
+    private static final int NIL = -1;
+    
+    // Fixed-point minor units, see Money
+    private long[] balances;
+    private int[] priorities;
+    private int[] left;
+    private int[] right;
+    // Subtree size, 0 for slots that aren't ranked
+    private int[] sizes;
+    private final Random random;
+    private int root;
+    
+    public BalanceRanking() {
+        this.balances = new long[16];
+        this.priorities = new int[16];
+        this.left = new int[16];
+        this.right = new int[16];
+        this.sizes = new int[16];
+        this.random = new Random();
+        this.root = NIL;
+    }
+    
+    public synchronized void update(int slot, long balance) {
+        ensureCapacity(slot);
+        if (sizes[slot] != 0) {
+            if (balances[slot] == balance) {
+                return;
+            }
+            root = remove(root, slot, balances[slot]);
+        }
+        balances[slot] = balance;
+        priorities[slot] = random.nextInt();
+        left[slot] = NIL;
+        right[slot] = NIL;
+        sizes[slot] = 1;
+        root = insert(root, slot);
+    }
+    
+    // Reads the balance under the ranking's lock, so whichever of two concurrent refreshes of a
+    // slot is applied last also saw the latest balance
+    public synchronized void refresh(int slot, AccountStore accounts) {
+        update(slot, accounts.getUnits(slot));
+    }
+    
+    // Ranks every account in the store from scratch, one pass instead of a remove and insert
+    // for each of them after a change to most balances
+    public synchronized void rebuild(AccountStore accounts) {
+        clear();
+        for (int slot = 0; slot < accounts.limit(); slot++) {
+            if (accounts.isUsed(slot)) {
+                update(slot, accounts.getUnits(slot));
+            }
+        }
+    }
+    
+    public synchronized void remove(int slot) {
+        if (slot < sizes.length && sizes[slot] != 0) {
+            root = remove(root, slot, balances[slot]);
+            sizes[slot] = 0;
+        }
+    }
+    
+    public synchronized void clear() {
+        Arrays.fill(sizes, 0);
+        root = NIL;
+    }
+    
+    public synchronized int size() {
+        return size(root);
+    }
+    
+    // 1-based position, 0 if the slot isn't ranked
+    public synchronized int getRank(int slot) {
+        if (slot < 0 || slot >= sizes.length || sizes[slot] == 0) {
+            return 0;
+        }
+        
+        long balance = balances[slot];
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            int cmp = compare(slot, balance, node);
+            if (cmp < 0) {
+                node = left[node];
+            } else {
+                rank += size(left[node]) + 1;
+                if (cmp == 0) {
+                    return rank;
+                }
+                node = right[node];
+            }
+        }
+        return 0;
+    }
+    
+    // Slots in rank order
+    public synchronized int[] getRange(int offset, int limit) {
+        int[] range = new int[Math.max(0, Math.min(limit, size(root) - offset))];
+        collect(root, offset, range, 0);
+        return range;
+    }
+    
+    // Returns how many slots have been written to out
+    private int collect(int node, int offset, int[] out, int count) {
+        if (node == NIL || count >= out.length) {
+            return count;
+        }
+        
+        int leftSize = size(left[node]);
+        if (offset < leftSize) {
+            count = collect(left[node], offset, out, count);
+        }
+        if (offset <= leftSize && count < out.length) {
+            out[count++] = node;
+        }
+        return collect(right[node], Math.max(0, offset - leftSize - 1), out, count);
+    }
+    
+    private void ensureCapacity(int slot) {
+        if (slot < sizes.length) {
+            return;
+        }
+        int capacity = sizes.length;
+        while (capacity <= slot) {
+            capacity *= 2;
+        }
+        balances = Arrays.copyOf(balances, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+    
+    // Richer first, ties broken by slot so every account has a fixed position
+    private int compare(int slot, long balance, int node) {
+        int cmp = Long.compare(balances[node], balance);
+        return cmp != 0 ? cmp : Integer.compare(slot, node);
+    }
+    
+    private int size(int node) {
+        return node == NIL ? 0 : sizes[node];
+    }
+    
+    private int update(int node) {
+        sizes[node] = size(left[node]) + size(right[node]) + 1;
+        return node;
+    }
+    
+    private int insert(int node, int inserted) {
+        if (node == NIL) {
+            return inserted;
+        }
+        
+        if (priorities[inserted] > priorities[node]) {
+            split(node, inserted, balances[inserted]);
+            return update(inserted);
+        }
+        
+        if (compare(inserted, balances[inserted], node) < 0) {
+            left[node] = insert(left[node], inserted);
+        } else {
+            right[node] = insert(right[node], inserted);
+        }
+        return update(node);
+    }
+    
+    private int remove(int node, int slot, long balance) {
+        if (node == NIL) {
+            return NIL;
+        }
+        
+        int cmp = compare(slot, balance, node);
+        if (cmp == 0) {
+            return merge(left[node], right[node]);
+        }
+        
+        if (cmp < 0) {
+            left[node] = remove(left[node], slot, balance);
+        } else {
+            right[node] = remove(right[node], slot, balance);
+        }
+        return update(node);
+    }
+    
+    // Splits node into the slots ranked before the key and those ranked after it,
+    // stored as the key's left and right children
+    private void split(int node, int key, long balance) {
+        if (node == NIL) {
+            left[key] = NIL;
+            right[key] = NIL;
+            return;
+        }
+        
+        if (compare(key, balance, node) < 0) {
+            split(left[node], key, balance);
+            left[node] = right[key];
+            right[key] = update(node);
+        } else {
+            split(right[node], key, balance);
+            right[node] = left[key];
+            left[key] = update(node);
+        }
+    }
+    
+    private int merge(int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            return update(a);
+        } else {
+            left[b] = merge(a, left[b]);
+            return update(b);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Rank snapshot behind /ecoplus baltop <page>. It is rebuilt at most once per cache duration,
+// the first player to open a page renders its lines and everyone after that reuses them.
+// Without a cache it holds just the page that was asked for.
+public class BaltopPages {
+    
+    private final List<DataManager.PlayerData> entries;
+    // Rank of the first entry minus one, and how many accounts are ranked in all
+    private final int offset;
+    private final int total;
+    private final int pageSize;
+    private final long createdAt;
+    // Rendered lines per page, index 0 is page 1
+    private final AtomicReferenceArray<String[]> rendered;
+    
+    public BaltopPages(List<DataManager.PlayerData> entries, int pageSize, long createdAt) {
+        this(entries, 0, entries.size(), pageSize, createdAt);
+    }
+    
+    public BaltopPages(List<DataManager.PlayerData> entries, int offset, int total, int pageSize, long createdAt) {
+        this.entries = entries;
+        this.offset = offset;
+        this.total = total;
+        this.pageSize = pageSize;
+        this.createdAt = createdAt;
+        this.rendered = new AtomicReferenceArray<>(getPageCount());
+    }
+    
+    public boolean isEmpty() {
+        return total == 0;
+    }
+    
+    public int getPageCount() {
+        return (total + pageSize - 1) / pageSize;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    // Pages start at 1, the rank of an entry is its index plus firstRank(page). Empty for a page
+    // that wasn't read.
+    public List<DataManager.PlayerData> getEntries(int page) {
+        int from = Math.min(entries.size(), Math.max(0, firstRank(page) - 1 - offset));
+        return entries.subList(from, Math.min(entries.size(), from + pageSize));
+    }
+    
+    public int firstRank(int page) {
+        return (page - 1) * pageSize + 1;
+    }
+    
+    // Null until the page has been rendered
+    public String[] getRendered(int page) {
+        return rendered.get(page - 1);
+    }
+    
+    public void setRendered(int page, String[] lines) {
+        rendered.set(page - 1, lines);
+    }
+}
\ No newline at end of file
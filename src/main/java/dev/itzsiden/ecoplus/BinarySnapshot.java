@@ -0,0 +1,109 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Snapshot body without field names or text numbers: magic, format version and flags,
+// then per account the uuid as two longs, the name and the balance in fixed-point units
+public final class BinarySnapshot {
+    
+    private static final int MAGIC = 0x45504253; // "EPBS"
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    
+    // Written before every account and once at the end, the store can grow while it's written
+    private static final int TAG_ACCOUNT = 1;
+    private static final int TAG_END = 0;
+    
+    private BinarySnapshot() {
+    }
+    
+    // Peeks at the first bytes, the stream has to support mark
+    public static boolean isBinary(InputStream input) throws IOException {
+        input.mark(4);
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = input.read();
+            if (b < 0) {
+                input.reset();
+                return false;
+            }
+            magic = (magic << 8) | b;
+        }
+        input.reset();
+        return magic == MAGIC;
+    }
+    
+    public static void write(OutputStream output, Collection<DataManager.PlayerData> accounts, boolean compress) throws IOException {
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_COMPRESSED : 0);
+        header.flush();
+        
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            OutputStream body = compress ? new DeflaterOutputStream(output, deflater, 64 * 1024) : output;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(body, 64 * 1024));
+            for (DataManager.PlayerData data : accounts) {
+                out.writeByte(TAG_ACCOUNT);
+                out.writeLong(data.getUuid().getMostSignificantBits());
+                out.writeLong(data.getUuid().getLeastSignificantBits());
+                out.writeUTF(data.getName());
+                out.writeLong(data.getBalanceUnits());
+            }
+            out.writeByte(TAG_END);
+            out.flush();
+            // Finish the compressed stream without closing the file underneath
+            if (body instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) body).finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+    
+    public static int read(InputStream input, AccountStore into) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("not a binary snapshot");
+        }
+        int version = header.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("binary snapshot version " + version + " is newer than this plugin supports");
+        }
+        boolean compressed = (header.readUnsignedByte() & FLAG_COMPRESSED) != 0;
+        
+        Inflater inflater = compressed ? new Inflater() : null;
+        try {
+            InputStream body = compressed ? new InflaterInputStream(input, inflater, 64 * 1024) : input;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(body, 64 * 1024));
+            int count = 0;
+            while (true) {
+                int tag = in.readUnsignedByte();
+                if (tag == TAG_END) {
+                    return count;
+                }
+                if (tag != TAG_ACCOUNT) {
+                    throw new IOException("unexpected record tag " + tag);
+                }
+                
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String name = in.readUTF();
+                into.put(uuid, name, in.readLong());
+                count++;
+            }
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -10,12 +10,19 @@ import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 public class CommandHandler implements CommandExecutor, TabCompleter {
     
+    // Most player names suggested at once
+    private static final int NAME_COMPLETIONS = 50;
+    
     private final EcoPlus plugin;
     private final DataManager dataManager;
     private final MessageManager messageManager;
@@ -36,6 +43,12 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         
         String subCommand = args[0].toLowerCase();
         
+        // Balances aren't all in memory yet, answering now would show wrong numbers
+        if (dataManager.isLoading()) {
+            sender.sendMessage(messageManager.getMessage("data-loading"));
+            return true;
+        }
+        
         switch (subCommand) {
             case "balance":
             case "bal":
@@ -43,7 +56,10 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
                 
             case "baltop":
             case "top":
-                return handleBaltop(sender);
+                return handleBaltop(sender, args);
+                
+            case "pay":
+                return handlePay(sender, args);
                 
             case "add":
                 return handleAdd(sender, args);
@@ -68,6 +84,7 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         }
         
         String targetName;
+        DataManager.PlayerData account;
         
         if (args.length == 1) {
             if (!(sender instanceof Player)) {
@@ -75,79 +92,196 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
                 return true;
             }
             targetName = sender.getName();
+            account = dataManager.getAccount(((Player) sender).getUniqueId());
         } else {
             targetName = args[1];
+            account = dataManager.getAccount(targetName);
         }
         
-        if (!dataManager.playerExists(targetName)) {
+        if (account == null) {
             sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
             return true;
         }
         
-        double balance = dataManager.getBalance(targetName);
+        double balance = account.getBalance();
         String formattedBalance = dataManager.formatBalance(balance);
         
-        if (targetName.equals(sender.getName())) {
+        if (sender instanceof Player && account.getUuid().equals(((Player) sender).getUniqueId())) {
             sender.sendMessage(messageManager.getMessage("balance-self", 
                 "{amount}", formattedBalance));
         } else {
             sender.sendMessage(messageManager.getMessage("balance-other",
-                "{player}", targetName,
+                "{player}", account.getName(),
                 "{amount}", formattedBalance));
         }
         
         return true;
     }
     
-    private boolean handleBaltop(CommandSender sender) {
+    private boolean handleBaltop(CommandSender sender, String[] args) {
         if (!sender.hasPermission("ecoplus.use")) {
             sender.sendMessage(messageManager.getMessage("no-permission"));
             return true;
         }
         
-        int topCount = plugin.getConfigManager().getBaltopCount();
-        List<Map.Entry<String, DataManager.PlayerData>> topPlayers = dataManager.getTopBalances(topCount);
+        int page = 1;
+        if (args.length >= 2) {
+            try {
+                page = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(messageManager.getMessage("usage-baltop"));
+                return true;
+            }
+        }
         
-        if (topPlayers.isEmpty()) {
+        BaltopPages pages = dataManager.getBaltopPages(page);
+        if (pages.isEmpty()) {
             sender.sendMessage(messageManager.getMessage("baltop-empty"));
             return true;
         }
+        if (page < 1 || page > pages.getPageCount()) {
+            sender.sendMessage(messageManager.getMessage("baltop-invalid-page",
+                "{page}", String.valueOf(page),
+                "{pages}", String.valueOf(pages.getPageCount())));
+            return true;
+        }
         
-        String header = messageManager.getMessage("baltop-header", "{count}", String.valueOf(topCount));
-        sender.sendMessage(header);
-        
-        int rank = 1;
-        for (Map.Entry<String, DataManager.PlayerData> entry : topPlayers) {
-            String playerName = entry.getKey();
-            double balance = entry.getValue().getBalance();
-            String formattedBalance = dataManager.formatBalance(balance);
-            
+        // Rendered once per snapshot, later viewers of the page get the same lines
+        String[] lines = pages.getRendered(page);
+        if (lines == null) {
+            lines = renderBaltopPage(pages, page);
+            pages.setRendered(page, lines);
+        }
+        for (String line : lines) {
+            sender.sendMessage(line);
+        }
+        return true;
+    }
+    
+    private String[] renderBaltopPage(BaltopPages pages, int page) {
+        List<DataManager.PlayerData> entries = pages.getEntries(page);
+        List<String> lines = new ArrayList<>(entries.size() + 3);
+        lines.add(messageManager.getMessage("baltop-header",
+            "{count}", String.valueOf(entries.size()),
+            "{page}", String.valueOf(page),
+            "{pages}", String.valueOf(pages.getPageCount())));
+        
+        int rank = pages.firstRank(page);
+        for (DataManager.PlayerData entry : entries) {
             String rankColor;
             switch (rank) {
                 case 1:
-                    rankColor = "&6";
+                    rankColor = ChatColor.GOLD.toString();
                     break;
                 case 2:
-                    rankColor = "&7";
+                    rankColor = ChatColor.GRAY.toString();
                     break;
                 case 3:
-                    rankColor = "&e";
+                    rankColor = ChatColor.YELLOW.toString();
                     break;
                 default:
-                    rankColor = "&f";
+                    rankColor = ChatColor.WHITE.toString();
             }
             
-            String entry_msg = messageManager.getMessage("baltop-entry",
+            lines.add(messageManager.getMessage("baltop-entry",
                 "{rank_color}", rankColor,
                 "{rank}", String.valueOf(rank),
-                "{player}", playerName,
-                "{amount}", formattedBalance);
-            
-            sender.sendMessage(entry_msg);
+                "{player}", entry.getName(),
+                "{amount}", dataManager.formatBalance(entry.getBalance())));
             rank++;
         }
         
-        sender.sendMessage(messageManager.getMessage("baltop-footer"));
+        if (page < pages.getPageCount()) {
+            lines.add(messageManager.getMessage("baltop-next-page", "{page}", String.valueOf(page + 1)));
+        }
+        lines.add(messageManager.getMessage("baltop-footer"));
+        return lines.toArray(new String[0]);
+    }
+    
+    private boolean handlePay(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("ecoplus.pay")) {
+            sender.sendMessage(messageManager.getMessage("no-permission"));
+            return true;
+        }
+        
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(messageManager.getMessage("players-only"));
+            return true;
+        }
+        
+        if (args.length < 3) {
+            sender.sendMessage(messageManager.getMessage("usage-pay"));
+            return true;
+        }
+        
+        String targetName = args[1];
+        double amount;
+        
+        try {
+            amount = Double.parseDouble(args[2]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(messageManager.getMessage("invalid-amount"));
+            return true;
+        }
+        
+        // Validate amount
+        ConfigManager.Settings config = plugin.getConfigManager().getSettings();
+        
+        if (amount < config.minTransaction) {
+            sender.sendMessage(messageManager.getMessage("must-be-positive"));
+            return true;
+        }
+        
+        if (amount > config.maxTransaction) {
+            sender.sendMessage(messageManager.getMessage("amount-too-large",
+                "{max}", dataManager.formatBalance(config.maxTransaction)));
+            return true;
+        }
+        
+        DataManager.PlayerData account = dataManager.getAccount(targetName);
+        if (account == null) {
+            sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
+            return true;
+        }
+        targetName = account.getName();
+        
+        String formattedAmount = dataManager.formatBalance(amount);
+        DataManager.TransferResult result = dataManager.transfer(((Player) sender).getUniqueId(), account.getUuid(), amount);
+        
+        switch (result) {
+            case SUCCESS:
+                break;
+                
+            case SAME_ACCOUNT:
+                sender.sendMessage(messageManager.getMessage("pay-self"));
+                return true;
+                
+            case INSUFFICIENT_FUNDS:
+                sender.sendMessage(messageManager.getMessage("insufficient-funds-self",
+                    "{amount}", formattedAmount,
+                    "{balance}", dataManager.formatBalance(dataManager.getBalance(((Player) sender).getUniqueId()))));
+                return true;
+                
+            case RECIPIENT_LIMIT:
+                sender.sendMessage(messageManager.getMessage("pay-recipient-full", "{player}", targetName));
+                return true;
+                
+            default:
+                sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
+                return true;
+        }
+        
+        sender.sendMessage(messageManager.getMessage("pay-success",
+            "{player}", targetName,
+            "{amount}", formattedAmount));
+        
+        Player target = Bukkit.getPlayer(account.getUuid());
+        if (target != null && target.isOnline()) {
+            target.sendMessage(messageManager.getMessage("pay-received",
+                "{player}", sender.getName(),
+                "{amount}", formattedAmount));
+        }
+        
         return true;
     }
     
@@ -173,26 +307,32 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         }
         
         // Validate amount
-        ConfigManager config = plugin.getConfigManager();
+        ConfigManager.Settings config = plugin.getConfigManager().getSettings();
         
-        if (amount < config.getMinTransaction()) {
+        if (amount < config.minTransaction) {
             sender.sendMessage(messageManager.getMessage("must-be-positive"));
             return true;
         }
         
-        if (amount > config.getMaxTransaction()) {
+        if (amount > config.maxTransaction) {
             sender.sendMessage(messageManager.getMessage("amount-too-large",
-                "{max}", dataManager.formatBalance(config.getMaxTransaction())));
+                "{max}", dataManager.formatBalance(config.maxTransaction)));
             return true;
         }
         
-        if (!dataManager.playerExists(targetName)) {
+        if (isBulkTarget(targetName)) {
+            return handleBulk(sender, targetName, amount, false);
+        }
+        
+        DataManager.PlayerData account = dataManager.getAccount(targetName);
+        if (account == null) {
             sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
             return true;
         }
+        targetName = account.getName();
         
-        double currentBalance = dataManager.getBalance(targetName);
-        double maxBalance = config.getMaxBalance();
+        double currentBalance = account.getBalance();
+        double maxBalance = config.maxBalance;
         
         // Check if adding would exceed max balance
         if (currentBalance + amount > maxBalance) {
@@ -203,14 +343,14 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
             }
         }
         
-        boolean success = dataManager.addBalance(targetName, amount);
+        boolean success = dataManager.addBalance(account.getUuid(), amount);
         
         if (!success) {
             sender.sendMessage(ChatColor.RED + "Failed to add balance. Please try again.");
             return true;
         }
         
-        double newBalance = dataManager.getBalance(targetName);
+        double newBalance = dataManager.getBalance(account.getUuid());
         String formattedAmount = dataManager.formatBalance(amount);
         String formattedBalance = dataManager.formatBalance(newBalance);
         
@@ -220,7 +360,7 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage(messageManager.getMessage("add-new-balance",
             "{balance}", formattedBalance));
         
-        Player target = Bukkit.getPlayer(targetName);
+        Player target = Bukkit.getPlayer(account.getUuid());
         if (target != null && target.isOnline()) {
             target.sendMessage(messageManager.getMessage("add-notification",
                 "{amount}", formattedAmount));
@@ -251,44 +391,41 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         }
         
         // Validate amount
-        ConfigManager config = plugin.getConfigManager();
+        ConfigManager.Settings config = plugin.getConfigManager().getSettings();
         
-        if (amount < config.getMinTransaction()) {
+        if (amount < config.minTransaction) {
             sender.sendMessage(messageManager.getMessage("must-be-positive"));
             return true;
         }
         
-        if (amount > config.getMaxTransaction()) {
+        if (amount > config.maxTransaction) {
             sender.sendMessage(messageManager.getMessage("amount-too-large",
-                "{max}", dataManager.formatBalance(config.getMaxTransaction())));
+                "{max}", dataManager.formatBalance(config.maxTransaction)));
             return true;
         }
         
-        if (!dataManager.playerExists(targetName)) {
-            sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
-            return true;
+        if (isBulkTarget(targetName)) {
+            return handleBulk(sender, targetName, amount, true);
         }
         
-        double currentBalance = dataManager.getBalance(targetName);
-        
-        // CHECK: Insufficient funds validation
-        if (!dataManager.hasBalance(targetName, amount)) {
-            sender.sendMessage(messageManager.getMessage("insufficient-funds",
-                "{player}", targetName,
-                "{balance}", dataManager.formatBalance(currentBalance)));
+        DataManager.PlayerData account = dataManager.getAccount(targetName);
+        if (account == null) {
+            sender.sendMessage(messageManager.getMessage("player-not-found", "{player}", targetName));
             return true;
         }
+        targetName = account.getName();
         
-        boolean success = dataManager.removeBalance(targetName, amount);
+        // Insufficient funds are detected by the debit itself, there is no separate check to race against
+        boolean success = dataManager.removeBalance(account.getUuid(), amount);
         
         if (!success) {
             sender.sendMessage(messageManager.getMessage("insufficient-funds",
                 "{player}", targetName,
-                "{balance}", dataManager.formatBalance(currentBalance)));
+                "{balance}", dataManager.formatBalance(dataManager.getBalance(account.getUuid()))));
             return true;
         }
         
-        double newBalance = dataManager.getBalance(targetName);
+        double newBalance = dataManager.getBalance(account.getUuid());
         String formattedAmount = dataManager.formatBalance(amount);
         String formattedBalance = dataManager.formatBalance(newBalance);
         
@@ -298,7 +435,7 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage(messageManager.getMessage("take-new-balance",
             "{balance}", formattedBalance));
         
-        Player target = Bukkit.getPlayer(targetName);
+        Player target = Bukkit.getPlayer(account.getUuid());
         if (target != null && target.isOnline()) {
             target.sendMessage(messageManager.getMessage("take-notification",
                 "{amount}", formattedAmount));
@@ -307,15 +444,61 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         return true;
     }
     
+    private static boolean isBulkTarget(String target) {
+        return target.equals("*") || target.equalsIgnoreCase("@online");
+    }
+    
+    // "*" is every account and "@online" everyone online, applied and saved as one batch.
+    // Taking skips the accounts that can't cover the amount.
+    private boolean handleBulk(CommandSender sender, String target, double amount, boolean take) {
+        double delta = take ? -amount : amount;
+        DataManager.BatchResult result;
+        if (target.equals("*")) {
+            if (dataManager.isBounded()) {
+                sender.sendMessage(messageManager.getMessage("bulk-all-unavailable"));
+                return true;
+            }
+            result = dataManager.applyToAll(delta, false);
+        } else {
+            Map<UUID, Double> changes = new HashMap<>();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                changes.put(player.getUniqueId(), delta);
+            }
+            result = dataManager.applyBatch(changes, false);
+        }
+        
+        String formattedAmount = dataManager.formatBalance(amount);
+        sender.sendMessage(messageManager.getMessage(take ? "bulk-take-success" : "bulk-add-success",
+            "{amount}", formattedAmount,
+            "{count}", String.valueOf(result.getApplied())));
+        if (!result.getSkipped().isEmpty()) {
+            sender.sendMessage(messageManager.getMessage("bulk-skipped",
+                "{count}", String.valueOf(result.getSkipped().size())));
+        }
+        
+        Set<UUID> skipped = new HashSet<>(result.getSkipped());
+        String notification = messageManager.getMessage(take ? "take-notification" : "add-notification",
+            "{amount}", formattedAmount);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (!skipped.contains(player.getUniqueId())) {
+                player.sendMessage(notification);
+            }
+        }
+        
+        return true;
+    }
+    
     private boolean handleReload(CommandSender sender) {
         if (!sender.hasPermission("ecoplus.admin")) {
             sender.sendMessage(messageManager.getMessage("no-permission"));
             return true;
         }
         
+        // Balances aren't re-read, the store in memory is already the current state and storage
+        // settings only apply after a restart
         plugin.getConfigManager().reloadConfig();
         messageManager.reloadMessages();
-        dataManager.loadData();
+        dataManager.reloadFormatter();
         
         sender.sendMessage(messageManager.getMessage("plugin-reloaded"));
         
@@ -327,6 +510,10 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage(messageManager.getMessage("help-balance"));
         sender.sendMessage(messageManager.getMessage("help-baltop"));
         
+        if (sender.hasPermission("ecoplus.pay")) {
+            sender.sendMessage(messageManager.getMessage("help-pay"));
+        }
+        
         if (sender.hasPermission("ecoplus.admin")) {
             sender.sendMessage(messageManager.getMessage("help-add"));
             sender.sendMessage(messageManager.getMessage("help-take"));
@@ -341,19 +528,26 @@ public class CommandHandler implements CommandExecutor, TabCompleter {
         List<String> completions = new ArrayList<>();
         
         if (args.length == 1) {
-            List<String> subCommands = Arrays.asList("balance", "baltop", "add", "take", "reload");
+            List<String> subCommands = Arrays.asList("balance", "baltop", "pay", "add", "take", "reload");
             return subCommands.stream()
                     .filter(s -> s.toLowerCase().startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         }
         
         if (args.length == 2 && (args[0].equalsIgnoreCase("balance") || 
+                                  args[0].equalsIgnoreCase("pay") || 
                                   args[0].equalsIgnoreCase("add") || 
                                   args[0].equalsIgnoreCase("take"))) {
-            return Bukkit.getOnlinePlayers().stream()
-                    .map(Player::getName)
-                    .filter(name -> name.toLowerCase().startsWith(args[1].toLowerCase()))
-                    .collect(Collectors.toList());
+            // Offline account holders too, admins often target them
+            completions = dataManager.completeNames(args[1], NAME_COMPLETIONS);
+            if ((args[0].equalsIgnoreCase("add") || args[0].equalsIgnoreCase("take")) && sender.hasPermission("ecoplus.admin")) {
+                for (String target : Arrays.asList("*", "@online")) {
+                    if (target.startsWith(args[1].toLowerCase())) {
+                        completions.add(target);
+                    }
+                }
+            }
+            return completions;
         }
         
         return completions;
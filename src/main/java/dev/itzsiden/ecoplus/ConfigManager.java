@@ -2,10 +2,14 @@ package dev.itzsiden.ecoplus;
 
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.logging.Logger;
+
 public class ConfigManager {
     
     private final EcoPlus plugin;
     private FileConfiguration config;
+    // Parsed once per load, readers on any thread see one consistent set of values
+    private volatile Settings settings;
     
     public ConfigManager(EcoPlus plugin) {
         this.plugin = plugin;
@@ -16,58 +20,221 @@ public class ConfigManager {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
         config = plugin.getConfig();
+        settings = new Settings(config, plugin.getLogger());
     }
     
     public void reloadConfig() {
         plugin.reloadConfig();
         config = plugin.getConfig();
+        settings = new Settings(config, plugin.getLogger());
+    }
+    
+    // Read this once when several values have to agree, e.g. the limits of one transaction
+    public Settings getSettings() {
+        return settings;
     }
     
     public String getPrefix() {
-        return config.getString("prefix", "&6[&eEcoPlus&6]&r");
+        return settings.prefix;
     }
     
     public String getCurrencyName() {
-        return config.getString("currency.name", "Stars");
+        return settings.currencyName;
     }
     
     public String getCurrencySymbol() {
-        return config.getString("currency.symbol", "⭐");
+        return settings.currencySymbol;
     }
     
     public double getStartingBalance() {
-        return config.getDouble("starting-balance", 0);
+        return settings.startingBalance;
     }
     
     public boolean useSeparators() {
-        return config.getBoolean("formatting.use-separators", true);
+        return settings.useSeparators;
     }
     
     public int getDecimalPlaces() {
-        return config.getInt("formatting.decimal-places", 2);
+        return settings.decimalPlaces;
     }
     
     public int getBaltopCount() {
-        return config.getInt("baltop.top-count", 10);
+        return settings.baltopCount;
     }
     
     public int getCacheDuration() {
-        return config.getInt("baltop.cache-duration", 300);
+        return settings.cacheDuration;
+    }
+    
+    public int getLeaderboardSize() {
+        return settings.leaderboardSize;
+    }
+    
+    public int getLeaderboardRefreshInterval() {
+        return settings.leaderboardRefreshInterval;
+    }
+    
+    public String getUnrankedText() {
+        return settings.unrankedText;
     }
     
     public double getMaxBalance() {
-        return config.getDouble("security.max-balance", 1000000000);
+        return settings.maxBalance;
     }
     
     public double getMaxTransaction() {
-        return config.getDouble("security.max-transaction", 100000000);
+        return settings.maxTransaction;
     }
     
     public double getMinTransaction() {
-        return config.getDouble("security.min-transaction", 0.01);
+        return settings.minTransaction;
     }
     
     public boolean isTransactionLoggingEnabled() {
-        return config.getBoolean("security.log-transactions", true);
+        return settings.logTransactions;
+    }
+    
+    public String getStorageType() {
+        return settings.storageType;
+    }
+    
+    public int getFlushInterval() {
+        return settings.flushInterval;
+    }
+    
+    public int getFlushThreshold() {
+        return settings.flushThreshold;
+    }
+    
+    public int getJournalCompactSize() {
+        return settings.journalCompactSize;
+    }
+    
+    public String getSnapshotFormat() {
+        return settings.snapshotFormat;
+    }
+    
+    public boolean isSnapshotCompressionEnabled() {
+        return settings.snapshotCompression;
+    }
+    
+    public static class Settings {
+        public final String prefix;
+        public final String currencyName;
+        public final String currencySymbol;
+        public final double startingBalance;
+        public final boolean useSeparators;
+        public final int decimalPlaces;
+        public final int baltopCount;
+        public final int cacheDuration;
+        public final int baltopMaxEntries;
+        public final int leaderboardSize;
+        public final int leaderboardRefreshInterval;
+        public final String unrankedText;
+        public final double maxBalance;
+        // max-balance in fixed-point units, see Money
+        public final long maxBalanceUnits;
+        public final double maxTransaction;
+        public final double minTransaction;
+        public final boolean logTransactions;
+        public final String storageType;
+        public final int flushInterval;
+        public final int flushThreshold;
+        public final int journalCompactSize;
+        public final String snapshotFormat;
+        public final boolean snapshotCompression;
+        public final int cacheSize;
+        public final int auditBufferSize;
+        public final String auditFullPolicy;
+        public final int auditMaxFileSize;
+        public final int auditRotateHours;
+        public final int auditMaxFiles;
+        public final int apiThreads;
+        public final boolean vaultEnabled;
+        public final String vaultPriority;
+        // Rates are percentages, intervals are in hours
+        public final boolean interestEnabled;
+        public final int interestInterval;
+        public final double interestRate;
+        public final double interestMinBalance;
+        public final boolean taxEnabled;
+        public final int taxInterval;
+        public final double taxRate;
+        public final double taxThreshold;
+        public final boolean decayEnabled;
+        public final int decayInterval;
+        public final double decayRate;
+        public final int decayInactiveDays;
+        
+        private Settings(FileConfiguration config, Logger logger) {
+            this.prefix = config.getString("prefix", "&6[&eEcoPlus&6]&r");
+            this.currencyName = config.getString("currency.name", "Stars");
+            this.currencySymbol = config.getString("currency.symbol", "⭐");
+            this.useSeparators = config.getBoolean("formatting.use-separators", true);
+            this.decimalPlaces = atLeast(logger, "formatting.decimal-places", config.getInt("formatting.decimal-places", 2), 0);
+            this.baltopCount = atLeast(logger, "baltop.top-count", config.getInt("baltop.top-count", 10), 1);
+            this.cacheDuration = atLeast(logger, "baltop.cache-duration", config.getInt("baltop.cache-duration", 300), 0);
+            this.baltopMaxEntries = atLeast(logger, "baltop.max-entries", config.getInt("baltop.max-entries", 10000), 1);
+            this.leaderboardSize = atLeast(logger, "placeholders.leaderboard-size", config.getInt("placeholders.leaderboard-size", 10), 0);
+            this.leaderboardRefreshInterval = atLeast(logger, "placeholders.refresh-interval", config.getInt("placeholders.refresh-interval", 10), 1);
+            this.unrankedText = config.getString("placeholders.unranked", "-");
+            this.maxBalance = atLeast(logger, "security.max-balance", config.getDouble("security.max-balance", 1000000000), 0);
+            this.maxBalanceUnits = Money.toUnits(maxBalance);
+            this.maxTransaction = atLeast(logger, "security.max-transaction", config.getDouble("security.max-transaction", 100000000), 0);
+            this.minTransaction = atLeast(logger, "security.min-transaction", config.getDouble("security.min-transaction", 0.01), 1.0 / Money.SCALE);
+            this.logTransactions = config.getBoolean("security.log-transactions", true);
+            this.startingBalance = Math.min(atLeast(logger, "starting-balance", config.getDouble("starting-balance", 0), 0), maxBalance);
+            this.storageType = config.getString("storage.type", "json");
+            this.flushInterval = atLeast(logger, "storage.flush-interval", config.getInt("storage.flush-interval", 5), 1);
+            this.flushThreshold = atLeast(logger, "storage.flush-threshold", config.getInt("storage.flush-threshold", 500), 1);
+            this.journalCompactSize = atLeast(logger, "storage.journal-compact-size", config.getInt("storage.journal-compact-size", 8192), 1);
+            this.snapshotFormat = config.getString("storage.snapshot-format", "json");
+            this.snapshotCompression = config.getBoolean("storage.snapshot-compression", true);
+            this.cacheSize = atLeast(logger, "storage.cache-size", config.getInt("storage.cache-size", 0), 0);
+            this.auditBufferSize = atLeast(logger, "audit.buffer-size", config.getInt("audit.buffer-size", 8192), 16);
+            this.auditFullPolicy = config.getString("audit.full-policy", "drop");
+            this.auditMaxFileSize = atLeast(logger, "audit.max-file-size", config.getInt("audit.max-file-size", 10240), 1);
+            this.auditRotateHours = atLeast(logger, "audit.rotate-hours", config.getInt("audit.rotate-hours", 24), 0);
+            this.auditMaxFiles = atLeast(logger, "audit.max-files", config.getInt("audit.max-files", 30), 0);
+            this.apiThreads = atLeast(logger, "api.threads", config.getInt("api.threads", 2), 1);
+            this.vaultEnabled = config.getBoolean("vault.enabled", false);
+            this.vaultPriority = config.getString("vault.priority", "normal");
+            this.interestEnabled = config.getBoolean("jobs.interest.enabled", false);
+            this.interestInterval = atLeast(logger, "jobs.interest.interval", config.getInt("jobs.interest.interval", 24), 1);
+            this.interestRate = percentage(logger, "jobs.interest.rate", config.getDouble("jobs.interest.rate", 1.0));
+            this.interestMinBalance = atLeast(logger, "jobs.interest.min-balance", config.getDouble("jobs.interest.min-balance", 0), 0);
+            this.taxEnabled = config.getBoolean("jobs.tax.enabled", false);
+            this.taxInterval = atLeast(logger, "jobs.tax.interval", config.getInt("jobs.tax.interval", 24), 1);
+            this.taxRate = percentage(logger, "jobs.tax.rate", config.getDouble("jobs.tax.rate", 1.0));
+            this.taxThreshold = atLeast(logger, "jobs.tax.threshold", config.getDouble("jobs.tax.threshold", 1000000), 0);
+            this.decayEnabled = config.getBoolean("jobs.decay.enabled", false);
+            this.decayInterval = atLeast(logger, "jobs.decay.interval", config.getInt("jobs.decay.interval", 24), 1);
+            this.decayRate = percentage(logger, "jobs.decay.rate", config.getDouble("jobs.decay.rate", 5.0));
+            this.decayInactiveDays = atLeast(logger, "jobs.decay.inactive-days", config.getInt("jobs.decay.inactive-days", 30), 1);
+        }
+        
+        private static int atLeast(Logger logger, String path, int value, int min) {
+            if (value < min) {
+                logger.warning(path + " is " + value + ", using " + min);
+                return min;
+            }
+            return value;
+        }
+        
+        private static double percentage(Logger logger, String path, double value) {
+            if (value > 100) {
+                logger.warning(path + " is " + value + ", using 100");
+                return 100;
+            }
+            return atLeast(logger, path, value, 0);
+        }
+        
+        private static double atLeast(Logger logger, String path, double value, double min) {
+            if (value < min) {
+                logger.warning(path + " is " + value + ", using " + min);
+                return min;
+            }
+            return value;
+        }
     }
 }
\ No newline at end of file
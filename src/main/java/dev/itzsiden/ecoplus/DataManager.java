@@ -1,212 +1,1248 @@
 package dev.itzsiden.ecoplus;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.io.*;
-import java.lang.reflect.Type;
-import java.text.DecimalFormat;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DataManager {
     
+    private static final int ACCOUNT_LOCK_STRIPES = 64;
+    
     private final EcoPlus plugin;
-    private final File dataFile;
-    private final Gson gson;
-    private final Map<String, PlayerData> playerDataMap;
+    // Resident accounts, looked up by uuid or case-insensitive name
+    private final AccountStore accounts;
+    // Striped per account, held by every change to a single balance and by both sides of a transfer
+    private final ReentrantLock[] accountLocks;
+    private final StorageBackend storage;
+    // Only a working set of accounts is resident, the rest are read from storage on demand
+    private final boolean bounded;
+    private final int cacheSize;
+    // Bumped by every eviction pass, see resolve
+    private volatile long evictions;
+    private final Set<UUID> onlinePlayers;
+    private final LastSeen lastSeen;
+    private final BalanceRanking ranking;
+    // Account names for tab completion, every account or with a bounded cache the working set
+    private final NameIndex names;
+    private final AuditLog audit;
+    private volatile TopSnapshot cachedTop;
+    private volatile BaltopPages baltopPages;
+    private volatile LeaderboardSnapshot leaderboard;
+    private volatile BalanceFormatter formatter;
+    private BukkitTask leaderboardTask;
+    // Completes once the current load has filled the store
+    private volatile CompletableFuture<Void> loading;
+    
+    // Write-behind state: mutations only mark the account dirty in the store, the flusher hands dirty accounts to the storage backend
+    private final Object flushLock;
+    private final ReadWriteLock batchLock;
+    private volatile long lastFlush;
+    private BukkitTask flushTask;
     
     public DataManager(EcoPlus plugin) {
         this.plugin = plugin;
-        this.dataFile = new File(plugin.getDataFolder(), "data/player_data.json");
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.playerDataMap = new ConcurrentHashMap<>();
+        this.accounts = new AccountStore();
+        this.ranking = new BalanceRanking();
+        this.names = new NameIndex();
+        this.leaderboard = LeaderboardSnapshot.EMPTY;
+        this.formatter = new BalanceFormatter(plugin.getConfigManager());
+        this.loading = CompletableFuture.completedFuture(null);
+        this.flushLock = new Object();
+        this.batchLock = new ReentrantReadWriteLock();
+        this.accountLocks = new ReentrantLock[ACCOUNT_LOCK_STRIPES];
+        for (int i = 0; i < accountLocks.length; i++) {
+            accountLocks[i] = new ReentrantLock();
+        }
+        this.lastFlush = System.currentTimeMillis();
+        this.storage = createStorage();
+        this.onlinePlayers = ConcurrentHashMap.newKeySet();
+        this.lastSeen = new LastSeen(plugin, new File(new File(plugin.getDataFolder(), "data"), "last_seen.dat"));
+        lastSeen.load();
+        
+        this.cacheSize = plugin.getConfigManager().getSettings().cacheSize;
+        if (cacheSize > 0 && !(storage instanceof SqliteStorageBackend)) {
+            plugin.getLogger().warning("storage.cache-size only applies to sqlite storage, keeping every account in memory");
+        }
+        this.bounded = cacheSize > 0 && storage instanceof SqliteStorageBackend;
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        this.audit = new AuditLog(plugin, settings.auditBufferSize, AuditLog.FullPolicy.parse(settings.auditFullPolicy, plugin.getLogger()));
+        audit.start();
+    }
+    
+    private StorageBackend createStorage() {
+        File dataFolder = new File(plugin.getDataFolder(), "data");
+        String type = plugin.getConfigManager().getStorageType();
+        
+        if (type.equalsIgnoreCase("sqlite")) {
+            return new SqliteStorageBackend(plugin, new File(dataFolder, "player_data.db"));
+        }
+        if (type.equalsIgnoreCase("mmap")) {
+            return new MappedStorageBackend(plugin, new File(dataFolder, "player_data.mmap"), accounts);
+        }
+        if (!type.equalsIgnoreCase("json")) {
+            plugin.getLogger().warning("Unknown storage type '" + type + "', using json");
+        }
+        return new JsonStorageBackend(plugin, dataFolder, accounts, this::copyAccounts);
+    }
+    
+    // Loads on an async thread, see isLoading and awaitLoaded
+    public CompletableFuture<Void> loadDataAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        loading = future;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                loadData();
+            } finally {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+    
+    // Completes once the current load has finished
+    public CompletableFuture<Void> whenLoaded() {
+        return loading;
+    }
+    
+    public boolean isLoading() {
+        return !loading.isDone();
+    }
+    
+    public boolean awaitLoaded(long timeout, TimeUnit unit) {
+        try {
+            loading.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
     }
     
     public void loadData() {
-        // Create data directory if it doesn't exist
-        if (!dataFile.getParentFile().exists()) {
-            dataFile.getParentFile().mkdirs();
+        synchronized (flushLock) {
+            if (bounded) {
+                startWorkingSet();
+                return;
+            }
+            
+            try {
+                storage.load(accounts);
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to load player data: " + e.getMessage());
+                return;
+            }
+            
+            if (accounts.size() == 0 && !(storage instanceof JsonStorageBackend)) {
+                importJsonData();
+            }
+            
+            ranking.rebuild(accounts);
+            names.clear();
+            for (int slot = 0; slot < accounts.limit(); slot++) {
+                if (accounts.isUsed(slot)) {
+                    names.add(accounts.getName(slot));
+                }
+            }
+            cachedTop = null;
+            baltopPages = null;
+            
+            plugin.getLogger().info("Loaded " + accounts.size() + " player records");
+        }
+    }
+    
+    // Accounts are read from storage as they are used, nothing is loaded up front
+    private void startWorkingSet() {
+        accounts.clear();
+        ranking.clear();
+        cachedTop = null;
+        baltopPages = null;
+        
+        if (storage.getTop(0, 1).isEmpty()) {
+            importJsonData();
         }
         
-        // Create file if it doesn't exist
-        if (!dataFile.exists()) {
+        // Names follow the working set, reading every stored name would undo the memory bound
+        names.clear();
+        
+        plugin.getLogger().info("Keeping up to " + cacheSize + " accounts in memory, others are loaded on demand");
+    }
+    
+    // Carries existing balances over the first time a server switches away from the json storage
+    private void importJsonData() {
+        File dataFolder = new File(plugin.getDataFolder(), "data");
+        if (!JsonStorageBackend.hasSnapshot(dataFolder)) {
+            return;
+        }
+        
+        AccountStore imported = new AccountStore();
+        JsonStorageBackend json = new JsonStorageBackend(plugin, dataFolder, imported, imported::snapshotAll);
+        try {
+            json.load(imported);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to import player_data.json: " + e.getMessage());
+            return;
+        } finally {
+            json.close();
+        }
+        
+        List<PlayerData> records = imported.snapshotAll();
+        if (!records.isEmpty() && storage.saveDirty(records)) {
+            if (!bounded) {
+                for (PlayerData data : records) {
+                    accounts.put(data.getUuid(), data.getName(), data.getBalanceUnits());
+                }
+            }
+            plugin.getLogger().info("Imported " + records.size() + " player records from player_data.json");
+        }
+    }
+    
+    // Every resident account as of one instant, no transfer or batch is half applied in it
+    private List<PlayerData> copyAccounts() {
+        batchLock.writeLock().lock();
+        try {
+            return accounts.snapshotAll();
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+    }
+    
+    public void saveData() {
+        flush();
+    }
+    
+    public void startFlushTask() {
+        stopFlushTask();
+        // Check once per second, the actual write happens only when the interval or threshold is hit
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            flushIfNeeded();
+            evictIfNeeded();
+            lastSeen.saveIfChanged();
+        }, 20L, 20L);
+    }
+    
+    public void stopFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+    }
+    
+    private void flushIfNeeded() {
+        int pending = accounts.dirtyCount();
+        if (pending == 0) {
+            return;
+        }
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        long intervalMillis = settings.flushInterval * 1000L;
+        if (pending >= settings.flushThreshold || System.currentTimeMillis() - lastFlush >= intervalMillis) {
+            flush();
+        }
+    }
+    
+    // Drops the least recently used accounts that are neither online nor waiting to be written
+    private void evictIfNeeded() {
+        if (!bounded || accounts.size() <= cacheSize) {
+            return;
+        }
+        
+        synchronized (flushLock) {
+            List<Integer> candidates = new ArrayList<>();
+            for (int slot = 0; slot < accounts.limit(); slot++) {
+                if (evictable(slot)) {
+                    candidates.add(slot);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(accounts::getLastAccess));
+            
+            // Mutations hold the read side, so no account changes while it's being dropped
+            int excess = accounts.size() - cacheSize;
+            batchLock.writeLock().lock();
             try {
-                dataFile.createNewFile();
-                saveData(); // Save empty map to create proper JSON structure
-                plugin.getLogger().info("Created new player_data.json file");
-            } catch (IOException e) {
-                plugin.getLogger().severe("Failed to create player_data.json: " + e.getMessage());
+                for (int slot : candidates) {
+                    if (excess <= 0) {
+                        break;
+                    }
+                    if (evictable(slot)) {
+                        names.remove(accounts.getName(slot));
+                        accounts.remove(slot);
+                        excess--;
+                    }
+                }
+                evictions++;
+            } finally {
+                batchLock.writeLock().unlock();
             }
+        }
+    }
+    
+    private boolean evictable(int slot) {
+        return accounts.isUsed(slot) && !accounts.isDirty(slot) && !onlinePlayers.contains(accounts.getUuid(slot));
+    }
+    
+    public void flush() {
+        // Nothing changed since the last pass, don't even wait for the lock
+        if (accounts.dirtyCount() == 0) {
             return;
         }
         
-        // Load existing data
-        try (Reader reader = new FileReader(dataFile)) {
-            Type type = new TypeToken<Map<String, PlayerData>>(){}.getType();
-            Map<String, PlayerData> loaded = gson.fromJson(reader, type);
+        synchronized (flushLock) {
+            if (accounts.dirtyCount() == 0) {
+                return;
+            }
             
-            if (loaded != null) {
-                playerDataMap.clear();
-                playerDataMap.putAll(loaded);
-                plugin.getLogger().info("Loaded " + playerDataMap.size() + " player records");
+            // Copy the balances so the batch stays consistent while the backend writes it.
+            // Holding the write side means no transfer is half applied while copying.
+            List<PlayerData> batch = new ArrayList<>(accounts.dirtyCount());
+            batchLock.writeLock().lock();
+            try {
+                accounts.forEachDirty(slot -> {
+                    accounts.clearDirty(slot);
+                    PlayerData data = accounts.snapshot(slot);
+                    if (data != null) {
+                        batch.add(data);
+                    }
+                });
+            } finally {
+                batchLock.writeLock().unlock();
+            }
+            
+            if (storage.saveDirty(batch)) {
+                lastFlush = System.currentTimeMillis();
+            } else {
+                // Keep the accounts dirty so the next pass retries them
+                for (PlayerData data : batch) {
+                    int slot = accounts.find(data.getUuid());
+                    if (slot >= 0) {
+                        accounts.markDirty(slot);
+                    }
+                }
             }
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to load player_data.json: " + e.getMessage());
         }
     }
     
-    public void saveData() {
-        try (Writer writer = new FileWriter(dataFile)) {
-            gson.toJson(playerDataMap, writer);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to save player_data.json: " + e.getMessage());
+    // Writes pending changes now instead of waiting for the interval, off the calling thread
+    private void requestFlush() {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::flush);
+    }
+    
+    public void shutdown() {
+        stopLeaderboardTask();
+        stopFlushTask();
+        synchronized (flushLock) {
+            flush();
+            storage.close();
+        }
+        lastSeen.save();
+        audit.close();
+    }
+    
+    private void balanceChanged(int slot) {
+        if (!bounded) {
+            ranking.refresh(slot, accounts);
+        }
+        accounts.markDirty(slot);
+    }
+    
+    // Slot of the resident account, read from storage first if it was evicted or never loaded.
+    // -1 if there is no such account.
+    private int resolve(UUID uuid) {
+        return resolve(uuid, prefetch(uuid));
+    }
+    
+    // Reads a non-resident account from storage before the caller takes any lock, so the disk
+    // read doesn't hold up flushes, evictions and batches. Null when there's nothing to read.
+    private Prefetched prefetch(UUID uuid) {
+        if (!bounded || accounts.find(uuid) >= 0) {
+            return null;
+        }
+        long stamp = evictions;
+        return new Prefetched(storage.get(uuid), stamp);
+    }
+    
+    // Like resolve(uuid), with storage already read by prefetch. An eviction since then may have
+    // written a newer balance, only in that case storage is read again here.
+    private int resolve(UUID uuid, Prefetched prefetched) {
+        int slot = accounts.find(uuid);
+        if (slot < 0 && bounded) {
+            boolean current = prefetched != null && prefetched.evictions == evictions;
+            slot = cache(current ? prefetched.data : storage.get(uuid));
+        }
+        if (slot >= 0 && bounded) {
+            accounts.touch(slot);
+        }
+        return slot;
+    }
+    
+    // Brings a stored account into the working set ahead of a join, off the main thread
+    public void preload(UUID uuid) {
+        if (!bounded) {
+            return;
+        }
+        Prefetched stored = prefetch(uuid);
+        batchLock.readLock().lock();
+        try {
+            resolve(uuid, stored);
+        } finally {
+            batchLock.readLock().unlock();
+        }
+    }
+    
+    private int cache(PlayerData stored) {
+        if (stored == null) {
+            return -1;
+        }
+        names.add(stored.getName());
+        return accounts.insert(stored.getUuid(), stored.getName(), stored.getBalanceUnits());
+    }
+    
+    // Reads don't hold the batch lock, so the slot is checked again afterwards in case
+    // the account was evicted and the slot reused in between
+    private PlayerData read(UUID uuid) {
+        while (true) {
+            int slot = resolve(uuid);
+            if (slot < 0) {
+                return null;
+            }
+            PlayerData data = accounts.snapshot(slot);
+            if (data != null && data.getUuid().equals(uuid)) {
+                return data;
+            }
         }
     }
     
     public PlayerData getPlayerData(Player player) {
-        return getPlayerData(player.getName(), player.getUniqueId().toString());
+        return getPlayerData(player.getUniqueId(), player.getName());
+    }
+    
+    // Creates the account on first sight and follows name changes
+    public PlayerData getPlayerData(UUID uuid, String playerName) {
+        Prefetched stored = prefetch(uuid);
+        batchLock.readLock().lock();
+        try {
+            int slot = resolve(uuid, stored);
+            if (slot < 0) {
+                slot = accounts.insert(uuid, playerName, Money.toUnits(plugin.getConfigManager().getStartingBalance()));
+                balanceChanged(slot);
+                names.add(playerName);
+            } else if (!playerName.equals(accounts.getName(slot))) {
+                names.rename(accounts.getName(slot), playerName);
+                accounts.rename(slot, playerName);
+                accounts.markDirty(slot);
+            }
+            return accounts.snapshot(slot);
+        } finally {
+            batchLock.readLock().unlock();
+        }
+    }
+    
+    // Online accounts are never evicted from the working set
+    public void setOnline(UUID uuid, boolean online) {
+        lastSeen.seen(uuid);
+        if (online) {
+            onlinePlayers.add(uuid);
+        } else {
+            onlinePlayers.remove(uuid);
+        }
     }
     
-    public PlayerData getPlayerData(String playerName, String uuid) {
-        return playerDataMap.computeIfAbsent(playerName, k -> 
-            new PlayerData(uuid, plugin.getConfigManager().getStartingBalance()));
+    public boolean isOnline(UUID uuid) {
+        return onlinePlayers.contains(uuid);
+    }
+    
+    public LastSeen getLastSeen() {
+        return lastSeen;
+    }
+    
+    public PlayerData getAccount(UUID uuid) {
+        return read(uuid);
+    }
+    
+    // Case-insensitive, null if nobody by that name has an account
+    public PlayerData getAccount(String playerName) {
+        int slot = accounts.findByName(playerName);
+        if (slot >= 0) {
+            PlayerData data = accounts.snapshot(slot);
+            if (data != null && data.getName().equalsIgnoreCase(playerName)) {
+                if (bounded) {
+                    accounts.touch(slot);
+                }
+                return data;
+            }
+        }
+        if (bounded) {
+            PlayerData stored = storage.getByName(playerName);
+            if (stored != null) {
+                cache(stored);
+                return read(stored.getUuid());
+            }
+        }
+        return null;
+    }
+    
+    // The account only if it's already in memory, storage is never read. Null otherwise.
+    public PlayerData getLoadedAccount(UUID uuid) {
+        int slot = accounts.find(uuid);
+        if (slot < 0) {
+            return null;
+        }
+        PlayerData data = accounts.snapshot(slot);
+        return data != null && data.getUuid().equals(uuid) ? data : null;
+    }
+    
+    public UUID getUuid(String playerName) {
+        PlayerData data = getAccount(playerName);
+        return data != null ? data.getUuid() : null;
+    }
+    
+    // Account names starting with prefix, ignoring case, online or not. With storage.cache-size
+    // only accounts in the working set are known here.
+    public List<String> completeNames(String prefix, int limit) {
+        return names.complete(prefix, limit);
     }
     
     public PlayerData getPlayerDataByName(String playerName) {
-        return playerDataMap.get(playerName);
+        return getAccount(playerName);
     }
     
     public double getBalance(String playerName) {
-        PlayerData data = playerDataMap.get(playerName);
+        PlayerData data = getAccount(playerName);
+        return data != null ? data.getBalance() : 0;
+    }
+    
+    public double getBalance(UUID uuid) {
+        PlayerData data = read(uuid);
         return data != null ? data.getBalance() : 0;
     }
     
     public void setBalance(String playerName, double amount) {
-        PlayerData data = playerDataMap.get(playerName);
-        if (data != null) {
-            // Clamp to max balance
-            double maxBalance = plugin.getConfigManager().getMaxBalance();
-            amount = Math.min(amount, maxBalance);
-            amount = Math.max(0, amount); // Prevent negative
-            
-            data.setBalance(amount);
-            saveData();
+        UUID uuid = getUuid(playerName);
+        if (uuid != null) {
+            setBalance(uuid, amount);
+        }
+    }
+    
+    public void setBalance(UUID uuid, double amount) {
+        Prefetched stored = prefetch(uuid);
+        ReentrantLock lock = accountLock(uuid);
+        batchLock.readLock().lock();
+        lock.lock();
+        try {
+            int slot = resolve(uuid, stored);
+            if (slot >= 0) {
+                // Clamp to max balance and prevent negative
+                long maxBalance = plugin.getConfigManager().getSettings().maxBalanceUnits;
+                accounts.setUnits(slot, Math.max(0, Math.min(Money.toUnits(amount), maxBalance)));
+                balanceChanged(slot);
+            }
+        } finally {
+            lock.unlock();
+            batchLock.readLock().unlock();
         }
     }
     
     public boolean addBalance(String playerName, double amount) {
-        PlayerData data = playerDataMap.get(playerName);
-        if (data != null) {
-            double currentBalance = data.getBalance();
-            double newBalance = currentBalance + amount;
-            double maxBalance = plugin.getConfigManager().getMaxBalance();
-            
-            // Check if it would exceed max balance
-            if (newBalance > maxBalance) {
-                newBalance = maxBalance;
+        UUID uuid = getUuid(playerName);
+        return uuid != null && addBalance(uuid, amount);
+    }
+    
+    public boolean addBalance(UUID uuid, double amount) {
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        long delta = Money.toUnits(amount);
+        long maxBalance = settings.maxBalanceUnits;
+        
+        String name;
+        long currentBalance;
+        Prefetched stored = prefetch(uuid);
+        ReentrantLock lock = accountLock(uuid);
+        batchLock.readLock().lock();
+        lock.lock();
+        try {
+            int slot = resolve(uuid, stored);
+            if (slot < 0) {
+                return false;
             }
             
-            data.setBalance(newBalance);
-            saveData();
-            
-            // Log transaction if enabled
-            if (plugin.getConfigManager().isTransactionLoggingEnabled()) {
-                plugin.getLogger().info(String.format("[ADD] %s: %.2f -> %.2f (+%.2f)", 
-                    playerName, currentBalance, newBalance, amount));
+            // Atomically add, clamped to max balance
+            name = accounts.getName(slot);
+            currentBalance = accounts.addClamped(slot, delta, maxBalance);
+            balanceChanged(slot);
+        } finally {
+            lock.unlock();
+            batchLock.readLock().unlock();
+        }
+        
+        // Log transaction if enabled
+        if (settings.logTransactions) {
+            long newBalance = AccountStore.clamp(currentBalance, delta, maxBalance);
+            audit.balanceChanged(AuditLog.Type.ADD, uuid, name, delta, currentBalance, newBalance);
+        }
+        
+        return true;
+    }
+    
+    // Like addBalance, but a credit that would go over max balance is refused instead of clamped.
+    // False if the account doesn't exist or has no room.
+    public boolean addBalanceIfRoom(UUID uuid, double amount) {
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        long credit = Money.toUnits(amount);
+        
+        String name;
+        long currentBalance;
+        Prefetched stored = prefetch(uuid);
+        ReentrantLock lock = accountLock(uuid);
+        batchLock.readLock().lock();
+        lock.lock();
+        try {
+            int slot = resolve(uuid, stored);
+            if (slot < 0) {
+                return false;
             }
             
-            return true;
+            name = accounts.getName(slot);
+            currentBalance = accounts.creditIfRoom(slot, credit, settings.maxBalanceUnits);
+            if (currentBalance < 0) {
+                return false;
+            }
+            balanceChanged(slot);
+        } finally {
+            lock.unlock();
+            batchLock.readLock().unlock();
         }
-        return false;
+        
+        if (settings.logTransactions) {
+            audit.balanceChanged(AuditLog.Type.ADD, uuid, name, credit, currentBalance, currentBalance + credit);
+        }
+        return true;
     }
     
     public boolean removeBalance(String playerName, double amount) {
-        PlayerData data = playerDataMap.get(playerName);
-        if (data != null) {
-            double currentBalance = data.getBalance();
+        UUID uuid = getUuid(playerName);
+        return uuid != null && removeBalance(uuid, amount);
+    }
+    
+    public boolean removeBalance(UUID uuid, double amount) {
+        long debit = Money.toUnits(amount);
+        
+        String name;
+        long currentBalance;
+        Prefetched stored = prefetch(uuid);
+        ReentrantLock lock = accountLock(uuid);
+        batchLock.readLock().lock();
+        lock.lock();
+        try {
+            int slot = resolve(uuid, stored);
+            if (slot < 0) {
+                return false;
+            }
             
-            // Check if player has enough funds
-            if (currentBalance < amount) {
+            // Check and debit in one step so concurrent callers can't both spend the same funds
+            name = accounts.getName(slot);
+            currentBalance = accounts.debitIfSufficient(slot, debit);
+            if (currentBalance < 0) {
                 return false; // Insufficient funds
             }
+            balanceChanged(slot);
+        } finally {
+            lock.unlock();
+            batchLock.readLock().unlock();
+        }
+        
+        // Log transaction if enabled
+        if (plugin.getConfigManager().isTransactionLoggingEnabled()) {
+            audit.balanceChanged(AuditLog.Type.TAKE, uuid, name, debit, currentBalance, currentBalance - debit);
+        }
+        
+        return true;
+    }
+    
+    public TransferResult transfer(UUID fromUuid, UUID toUuid, double amount) {
+        if (fromUuid.equals(toUuid)) {
+            return TransferResult.SAME_ACCOUNT;
+        }
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        long units = Money.toUnits(amount);
+        long maxBalance = settings.maxBalanceUnits;
+        
+        // Always lock the lower stripe first so two opposite transfers can't deadlock
+        int fromStripe = lockStripe(fromUuid);
+        int toStripe = lockStripe(toUuid);
+        ReentrantLock first = accountLocks[Math.min(fromStripe, toStripe)];
+        ReentrantLock second = accountLocks[Math.max(fromStripe, toStripe)];
+        
+        String fromName;
+        String toName;
+        long fromBalance;
+        long toBalance;
+        Prefetched storedFrom = prefetch(fromUuid);
+        Prefetched storedTo = prefetch(toUuid);
+        batchLock.readLock().lock();
+        first.lock();
+        second.lock();
+        try {
+            int from = resolve(fromUuid, storedFrom);
+            int to = resolve(toUuid, storedTo);
+            if (from < 0 || to < 0) {
+                return TransferResult.NO_ACCOUNT;
+            }
+            fromName = accounts.getName(from);
+            toName = accounts.getName(to);
             
-            double newBalance = currentBalance - amount;
-            data.setBalance(newBalance);
-            saveData();
+            // Every other change to either balance needs one of the held stripes or the write
+            // side, so both are checked before anything moves and stay valid until it has
+            fromBalance = accounts.getUnits(from);
+            toBalance = accounts.getUnits(to);
+            if (fromBalance < units) {
+                return TransferResult.INSUFFICIENT_FUNDS;
+            }
+            if (toBalance > maxBalance - units) {
+                return TransferResult.RECIPIENT_LIMIT;
+            }
+            accounts.setUnits(from, fromBalance - units);
+            accounts.setUnits(to, toBalance + units);
             
-            // Log transaction if enabled
-            if (plugin.getConfigManager().isTransactionLoggingEnabled()) {
-                plugin.getLogger().info(String.format("[TAKE] %s: %.2f -> %.2f (-%.2f)", 
-                    playerName, currentBalance, newBalance, amount));
+            balanceChanged(from);
+            balanceChanged(to);
+        } finally {
+            second.unlock();
+            first.unlock();
+            batchLock.readLock().unlock();
+        }
+        
+        // Log transaction if enabled
+        if (settings.logTransactions) {
+            audit.transfer(fromUuid, fromName, toUuid, toName, units, fromBalance - units, toBalance + units);
+        }
+        
+        return TransferResult.SUCCESS;
+    }
+    
+    // Applies a signed change per account as one batch: no other mutation or flush sees it half
+    // applied, and it's written in a single flush. Credits are clamped to max balance. With
+    // atomic set a debit the account can't cover rejects the whole batch, otherwise that
+    // account is skipped. Amounts outside Money.inRange are rejected before anything is applied.
+    public BatchResult applyBatch(Map<UUID, Double> changes, boolean atomic) {
+        for (Double amount : changes.values()) {
+            checkRange(amount);
+        }
+        
+        UUID[] uuids = new UUID[changes.size()];
+        long[] deltas = new long[changes.size()];
+        Prefetched[] stored = new Prefetched[changes.size()];
+        int count = 0;
+        for (Map.Entry<UUID, Double> change : changes.entrySet()) {
+            uuids[count] = change.getKey();
+            deltas[count] = Money.toUnits(change.getValue());
+            stored[count] = prefetch(uuids[count]);
+            count++;
+        }
+        
+        batchLock.writeLock().lock();
+        int[] slots = new int[count];
+        int missing = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                slots[i] = resolve(uuids[i], stored[i]);
+                if (slots[i] < 0) {
+                    missing++;
+                }
+            }
+            return logBatch(AuditLog.Type.BATCH, applyLocked(slots, deltas, atomic, missing, true));
+        } finally {
+            batchLock.writeLock().unlock();
+            requestFlush();
+        }
+    }
+    
+    // The same change for every account. Not available with a bounded working set, where most
+    // accounts aren't in memory.
+    public BatchResult applyToAll(double amount, boolean atomic) {
+        if (bounded) {
+            throw new IllegalStateException("applyToAll needs every account in memory");
+        }
+        checkRange(amount);
+        
+        // Most slots change, so the ranking is rebuilt once instead of updated per account
+        batchLock.writeLock().lock();
+        try {
+            int[] slots = usedSlots();
+            long[] deltas = new long[slots.length];
+            Arrays.fill(deltas, Money.toUnits(amount));
+            BatchResult result = applyLocked(slots, deltas, atomic, 0, false);
+            ranking.rebuild(accounts);
+            return logBatch(AuditLog.Type.BATCH, result);
+        } finally {
+            batchLock.writeLock().unlock();
+            requestFlush();
+        }
+    }
+    
+    // Works out a change per account in parallel on the fork-join pool, then applies the non-zero
+    // ones as one batch like applyToAll: credits clamped to max balance, one flush and one audit
+    // entry of the given type. Same restriction as applyToAll.
+    public BatchResult applyComputed(AuditLog.Type type, AccountChange change) {
+        if (bounded) {
+            throw new IllegalStateException("applyComputed needs every account in memory");
+        }
+        
+        // Computed under the read side, so payments and commands carry on meanwhile. A balance
+        // may move before the change is applied, debits are still checked against it then.
+        int[] slots;
+        UUID[] uuids;
+        long[] deltas;
+        batchLock.readLock().lock();
+        try {
+            slots = usedSlots();
+            uuids = new UUID[slots.length];
+            deltas = new long[slots.length];
+            Arrays.parallelSetAll(deltas, i -> {
+                uuids[i] = accounts.getUuid(slots[i]);
+                return change.compute(uuids[i], accounts.getUnits(slots[i]));
+            });
+        } finally {
+            batchLock.readLock().unlock();
+        }
+        
+        // Accounts left unchanged aren't touched, marking them dirty would rewrite them for nothing
+        int count = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (deltas[i] != 0) {
+                slots[count] = slots[i];
+                uuids[count] = uuids[i];
+                deltas[count] = deltas[i];
+                count++;
+            }
+        }
+        
+        batchLock.writeLock().lock();
+        try {
+            // An account removed in between may have had its slot reused
+            int missing = 0;
+            for (int i = 0; i < count; i++) {
+                if (!uuids[i].equals(accounts.getUuid(slots[i]))) {
+                    slots[i] = -1;
+                    missing++;
+                }
+            }
+            BatchResult result = applyLocked(Arrays.copyOf(slots, count), Arrays.copyOf(deltas, count), false, missing, false);
+            ranking.rebuild(accounts);
+            return logBatch(type, result);
+        } finally {
+            batchLock.writeLock().unlock();
+            requestFlush();
+        }
+    }
+    
+    // A delta of Long.MIN_VALUE units couldn't even be negated for the debit
+    private static void checkRange(Double amount) {
+        if (amount == null || !Money.inRange(amount)) {
+            throw new IllegalArgumentException("Invalid amount: " + amount);
+        }
+    }
+    
+    private int[] usedSlots() {
+        int[] slots = new int[accounts.size()];
+        int count = 0;
+        for (int slot = 0; slot < accounts.limit() && count < slots.length; slot++) {
+            if (accounts.isUsed(slot)) {
+                slots[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(slots, count);
+    }
+    
+    // Called with the write side held, missing accounts have slot -1. Without rerank the caller
+    // rebuilds the ranking afterwards.
+    private BatchResult applyLocked(int[] slots, long[] deltas, boolean atomic, int missing, boolean rerank) {
+        if (atomic) {
+            if (missing > 0) {
+                return new BatchResult(0, Collections.emptyList(), missing, 0, 0, true);
+            }
+            for (int i = 0; i < slots.length; i++) {
+                if (deltas[i] < 0 && accounts.getUnits(slots[i]) < -deltas[i]) {
+                    return new BatchResult(0, Collections.singletonList(accounts.getUuid(slots[i])), 0, 0, 0, true);
+                }
+            }
+        }
+        
+        long maxBalance = plugin.getConfigManager().getSettings().maxBalanceUnits;
+        List<UUID> skipped = new ArrayList<>();
+        int applied = 0;
+        long credited = 0;
+        long debited = 0;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (slot < 0) {
+                continue;
             }
             
-            return true;
+            if (deltas[i] >= 0) {
+                long before = accounts.addClamped(slot, deltas[i], maxBalance);
+                credited += AccountStore.clamp(before, deltas[i], maxBalance) - before;
+            } else if (accounts.debitIfSufficient(slot, -deltas[i]) >= 0) {
+                debited -= deltas[i];
+            } else {
+                skipped.add(accounts.getUuid(slot));
+                continue;
+            }
+            if (rerank) {
+                balanceChanged(slot);
+            } else {
+                accounts.markDirty(slot);
+            }
+            applied++;
         }
-        return false;
+        return new BatchResult(applied, skipped, missing, credited, debited, false);
+    }
+    
+    private BatchResult logBatch(AuditLog.Type type, BatchResult result) {
+        if (plugin.getConfigManager().isTransactionLoggingEnabled() && !result.isRejected()) {
+            audit.batch(type, result.getApplied(), result.credited, result.debited, result.getSkipped().size(), result.getMissing());
+        }
+        return result;
+    }
+    
+    private ReentrantLock accountLock(UUID uuid) {
+        return accountLocks[lockStripe(uuid)];
+    }
+    
+    private int lockStripe(UUID uuid) {
+        int hash = uuid.hashCode();
+        return (hash ^ (hash >>> 16)) & (ACCOUNT_LOCK_STRIPES - 1);
     }
     
     public boolean hasBalance(String playerName, double amount) {
-        PlayerData data = playerDataMap.get(playerName);
-        return data != null && data.getBalance() >= amount;
+        PlayerData data = getAccount(playerName);
+        return data != null && data.getBalanceUnits() >= Money.toUnits(amount);
+    }
+    
+    public List<PlayerData> getTopBalances(int limit) {
+        long cacheMillis = plugin.getConfigManager().getCacheDuration() * 1000L;
+        if (cacheMillis <= 0) {
+            return readTopBalances(limit);
+        }
+        
+        // Serve the cached snapshot until it's older than baltop.cache-duration
+        TopSnapshot snapshot = cachedTop;
+        if (snapshot == null || snapshot.limit < limit || System.currentTimeMillis() - snapshot.createdAt >= cacheMillis) {
+            snapshot = new TopSnapshot(readTopBalances(limit), limit, System.currentTimeMillis());
+            cachedTop = snapshot;
+        }
+        return snapshot.entries.size() > limit ? snapshot.entries.subList(0, limit) : snapshot.entries;
     }
     
-    public List<Map.Entry<String, PlayerData>> getTopBalances(int limit) {
-        return playerDataMap.entrySet().stream()
-                .sorted((e1, e2) -> Double.compare(e2.getValue().getBalance(), e1.getValue().getBalance()))
-                .limit(limit)
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    // Ranks for /ecoplus baltop, rebuilt at most once per baltop.cache-duration. With the cache
+    // off only the requested page is read.
+    public BaltopPages getBaltopPages(int page) {
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        long cacheMillis = settings.cacheDuration * 1000L;
+        if (cacheMillis <= 0) {
+            return readBaltopPage(page, settings.baltopCount, settings.baltopMaxEntries);
+        }
+        
+        BaltopPages pages = baltopPages;
+        if (pages == null || pages.getPageSize() != settings.baltopCount
+                || System.currentTimeMillis() - pages.getCreatedAt() >= cacheMillis) {
+            pages = new BaltopPages(readTopBalances(settings.baltopMaxEntries), settings.baltopCount, System.currentTimeMillis());
+            baltopPages = pages;
+        }
+        return pages;
+    }
+    
+    private BaltopPages readBaltopPage(int page, int pageSize, int maxEntries) {
+        int total = Math.min(maxEntries, bounded ? storage.count() : ranking.size());
+        int offset = (page - 1) * pageSize;
+        if (page < 1 || offset >= total) {
+            return new BaltopPages(Collections.<PlayerData>emptyList(), 0, total, pageSize, System.currentTimeMillis());
+        }
+        
+        int limit = Math.min(pageSize, total - offset);
+        List<PlayerData> entries = new ArrayList<>(limit);
+        if (bounded) {
+            // Ordered as of the last flush, balances of accounts in memory are current
+            for (PlayerData stored : storage.getTop(offset, limit)) {
+                PlayerData resident = getLoadedAccount(stored.getUuid());
+                entries.add(resident != null ? resident : stored);
+            }
+        } else {
+            for (int slot : ranking.getRange(offset, limit)) {
+                PlayerData data = accounts.snapshot(slot);
+                if (data != null) {
+                    entries.add(data);
+                }
+            }
+        }
+        return new BaltopPages(entries, offset, total, pageSize, System.currentTimeMillis());
+    }
+    
+    private List<PlayerData> readTopBalances(int limit) {
+        if (bounded) {
+            return readStoredTopBalances(limit);
+        }
+        
+        int[] slots = ranking.getRange(0, limit);
+        List<PlayerData> top = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            PlayerData data = accounts.snapshot(slot);
+            if (data != null) {
+                top.add(data);
+            }
+        }
+        return Collections.unmodifiableList(top);
+    }
+    
+    // The storage index is current for every account except those not flushed yet,
+    // so those are merged in with their resident balances
+    private List<PlayerData> readStoredTopBalances(int limit) {
+        Map<UUID, PlayerData> candidates = new HashMap<>();
+        for (PlayerData stored : storage.getTop(0, limit)) {
+            int slot = accounts.find(stored.getUuid());
+            PlayerData resident = slot >= 0 ? accounts.snapshot(slot) : null;
+            candidates.put(stored.getUuid(), resident != null && resident.getUuid().equals(stored.getUuid()) ? resident : stored);
+        }
+        accounts.forEachDirty(slot -> {
+            PlayerData resident = accounts.snapshot(slot);
+            if (resident != null) {
+                candidates.put(resident.getUuid(), resident);
+            }
+        });
+        
+        List<PlayerData> top = new ArrayList<>(candidates.values());
+        top.sort((d1, d2) -> {
+            int cmp = Long.compare(d2.getBalanceUnits(), d1.getBalanceUnits());
+            return cmp != 0 ? cmp : d1.getUuid().compareTo(d2.getUuid());
+        });
+        return Collections.unmodifiableList(top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top);
+    }
+    
+    public int getRank(UUID uuid) {
+        if (bounded) {
+            PlayerData data = read(uuid);
+            return data != null ? storage.countRicher(data.getBalanceUnits()) + 1 : 0;
+        }
+        int slot = accounts.find(uuid);
+        return slot >= 0 ? ranking.getRank(slot) : 0;
+    }
+    
+    public LeaderboardSnapshot getLeaderboard() {
+        return leaderboard;
+    }
+    
+    public void startLeaderboardTask() {
+        stopLeaderboardTask();
+        // A rebuild only touches the top entries and the online players, and may query storage
+        leaderboardTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            long refreshMillis = plugin.getConfigManager().getLeaderboardRefreshInterval() * 1000L;
+            if (System.currentTimeMillis() - leaderboard.getCreatedAt() >= refreshMillis) {
+                refreshLeaderboard();
+            }
+        }, 1L, 20L);
+    }
+    
+    public void stopLeaderboardTask() {
+        if (leaderboardTask != null) {
+            leaderboardTask.cancel();
+            leaderboardTask = null;
+        }
+    }
+    
+    public void refreshLeaderboard() {
+        int size = plugin.getConfigManager().getLeaderboardSize();
+        Map<String, String> values = new HashMap<>(size * 4);
+        List<PlayerData> top = readTopBalances(size);
+        
+        for (int i = 0; i < size; i++) {
+            String position = String.valueOf(i + 1);
+            if (i < top.size()) {
+                values.put("top_name_" + position, top.get(i).getName());
+                values.put("top_balance_" + position, formatBalance(top.get(i).getBalance()));
+            } else {
+                values.put("top_name_" + position, "");
+                values.put("top_balance_" + position, "");
+            }
+        }
+        
+        Map<UUID, Integer> ranks = new HashMap<>();
+        for (UUID uuid : onlinePlayers) {
+            ranks.put(uuid, getRank(uuid));
+        }
+        
+        leaderboard = new LeaderboardSnapshot(values, ranks, System.currentTimeMillis());
+    }
+    
+    // Whether only a working set of accounts is in memory, see storage.cache-size
+    public boolean isBounded() {
+        return bounded;
     }
     
     public boolean playerExists(String playerName) {
-        return playerDataMap.containsKey(playerName);
+        return getAccount(playerName) != null;
+    }
+    
+    public boolean playerExists(UUID uuid) {
+        return resolve(uuid) >= 0;
     }
     
     // Formatting methods
+    public void reloadFormatter() {
+        formatter = new BalanceFormatter(plugin.getConfigManager());
+        // Leaderboard values and baltop pages were rendered with the old settings
+        leaderboard = LeaderboardSnapshot.EMPTY;
+        baltopPages = null;
+    }
+    
     public String formatBalance(double balance) {
-        ConfigManager config = plugin.getConfigManager();
-        DecimalFormat df = new DecimalFormat();
-        df.setMinimumFractionDigits(config.getDecimalPlaces());
-        df.setMaximumFractionDigits(config.getDecimalPlaces());
-        df.setGroupingUsed(config.useSeparators());
-        return df.format(balance);
+        return formatter.format(balance);
     }
     
     public String formatBalanceShorthand(double balance) {
-        if (balance < 1000) {
-            return String.format("%.1f", balance);
-        } else if (balance < 1000000) {
-            return String.format("%.1fk", balance / 1000);
-        } else if (balance < 1000000000) {
-            return String.format("%.1fM", balance / 1000000);
-        } else if (balance < 1000000000000L) {
-            return String.format("%.1fB", balance / 1000000000);
-        } else {
-            return String.format("%.1fT", balance / 1000000000000L);
+        return formatter.formatShorthand(balance);
+    }
+    
+    // Cached in the store per account, only re-rendered after its balance changes
+    public String formatBalance(PlayerData data) {
+        return render(data).getFormatted();
+    }
+    
+    public String formatBalanceShorthand(PlayerData data) {
+        return render(data).getShorthand();
+    }
+    
+    private BalanceFormatter.Rendered render(PlayerData data) {
+        int slot = accounts.find(data.getUuid());
+        return slot >= 0 ? accounts.render(slot, formatter) : formatter.render(data.getBalanceUnits(), null);
+    }
+    
+    private static final class Prefetched {
+        final PlayerData data;
+        // Eviction passes before the read
+        final long evictions;
+        
+        Prefetched(PlayerData data, long evictions) {
+            this.data = data;
+            this.evictions = evictions;
+        }
+    }
+    
+    // Signed change in fixed-point units for an account holding the given balance, 0 for none
+    public interface AccountChange {
+        long compute(UUID uuid, long units);
+    }
+    
+    public enum TransferResult {
+        SUCCESS,
+        NO_ACCOUNT,
+        SAME_ACCOUNT,
+        INSUFFICIENT_FUNDS,
+        RECIPIENT_LIMIT
+    }
+    
+    public static class BatchResult {
+        private final int applied;
+        private final List<UUID> skipped;
+        private final int missing;
+        private final long credited;
+        private final long debited;
+        private final boolean rejected;
+        
+        private BatchResult(int applied, List<UUID> skipped, int missing, long credited, long debited, boolean rejected) {
+            this.applied = applied;
+            this.skipped = skipped;
+            this.missing = missing;
+            this.credited = credited;
+            this.debited = debited;
+            this.rejected = rejected;
+        }
+        
+        public int getApplied() {
+            return applied;
+        }
+        
+        // Accounts that couldn't cover their debit. For a rejected batch, the first one found.
+        public List<UUID> getSkipped() {
+            return skipped;
+        }
+        
+        // Accounts in the batch that don't exist
+        public int getMissing() {
+            return missing;
+        }
+        
+        public double getCredited() {
+            return Money.toDouble(credited);
+        }
+        
+        public double getDebited() {
+            return Money.toDouble(debited);
+        }
+        
+        // Atomic batch that wasn't applied at all
+        public boolean isRejected() {
+            return rejected;
         }
     }
     
+    private static class TopSnapshot {
+        private final List<PlayerData> entries;
+        private final int limit;
+        private final long createdAt;
+        
+        private TopSnapshot(List<PlayerData> entries, int limit, long createdAt) {
+            this.entries = entries;
+            this.limit = limit;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    // Detached copy of an account, the live balances are kept in the AccountStore
     public static class PlayerData {
-        private String uuid;
-        private double balance;
+        private final UUID uuid;
+        private final String name;
+        // Fixed-point minor units, see Money
+        private long balance;
         
-        public PlayerData(String uuid, double balance) {
+        public PlayerData(UUID uuid, String name, double balance) {
             this.uuid = uuid;
-            this.balance = balance;
+            this.name = name;
+            this.balance = Money.toUnits(balance);
+        }
+        
+        static PlayerData fromUnits(UUID uuid, String name, long units) {
+            PlayerData data = new PlayerData(uuid, name, 0);
+            data.balance = units;
+            return data;
         }
         
-        public String getUuid() {
+        public UUID getUuid() {
             return uuid;
         }
         
+        public String getName() {
+            return name;
+        }
+        
         public double getBalance() {
-            return balance;
+            return Money.toDouble(balance);
         }
         
-        public void setBalance(double balance) {
-            this.balance = balance;
+        public long getBalanceUnits() {
+            return balance;
         }
     }
 }
\ No newline at end of file
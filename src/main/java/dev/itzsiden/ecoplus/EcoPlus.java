@@ -1,6 +1,9 @@
 package dev.itzsiden.ecoplus;
 
+import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public class EcoPlus extends JavaPlugin {
@@ -9,6 +12,8 @@ public class EcoPlus extends JavaPlugin {
     private CommandHandler commandHandler;
     private ConfigManager configManager;
     private MessageManager messageManager;
+    private EconomyService economyService;
+    private EconomyJobs economyJobs;
     
     @Override
     public void onEnable() {
@@ -23,7 +28,15 @@ public class EcoPlus extends JavaPlugin {
         
         // Initialize data manager
         dataManager = new DataManager(this);
-        dataManager.loadData();
+        // Loaded in the background, logins wait for it in PlayerListener
+        dataManager.loadDataAsync();
+        dataManager.startFlushTask();
+        economyJobs = new EconomyJobs(this, dataManager);
+        economyJobs.start();
+        
+        // Public API for other plugins
+        economyService = new EconomyService(dataManager, configManager.getSettings().apiThreads);
+        getServer().getServicesManager().register(EconomyService.class, economyService, this, ServicePriority.Normal);
         
         // Register command handler
         commandHandler = new CommandHandler(this, dataManager, messageManager);
@@ -32,10 +45,20 @@ public class EcoPlus extends JavaPlugin {
         
         // Register event listener
         getServer().getPluginManager().registerEvents(new PlayerListener(dataManager, configManager), this);
+        // Players already online after a plugin reload never fire a join
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            dataManager.setOnline(player.getUniqueId(), true);
+        }
+        
+        // Register as a Vault economy if available
+        if (configManager.getSettings().vaultEnabled && Bukkit.getPluginManager().getPlugin("Vault") != null) {
+            registerVault();
+        }
         
         // Register PlaceholderAPI expansion if available
         if (Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null) {
             new EcoPlusPlaceholders(this, dataManager).register();
+            dataManager.startLeaderboardTask();
             getLogger().info("PlaceholderAPI hook registered!");
         } else {
             getLogger().warning("PlaceholderAPI not found. Placeholders will not work.");
@@ -44,11 +67,36 @@ public class EcoPlus extends JavaPlugin {
         getLogger().info("EcoPlus has been enabled!");
     }
     
+    private void registerVault() {
+        String priority = configManager.getSettings().vaultPriority;
+        ServicePriority servicePriority = ServicePriority.Normal;
+        for (ServicePriority value : ServicePriority.values()) {
+            if (value.name().equalsIgnoreCase(priority)) {
+                servicePriority = value;
+            }
+        }
+        if (!servicePriority.name().equalsIgnoreCase(priority)) {
+            getLogger().warning("Unknown vault.priority '" + priority + "', using normal");
+        }
+        getServer().getServicesManager().register(Economy.class, new VaultEconomy(this, dataManager), this, servicePriority);
+        getLogger().info("Vault economy registered!");
+    }
+    
     @Override
     public void onDisable() {
-        // Save all player data before shutdown
+        if (economyJobs != null) {
+            economyJobs.stop();
+        }
+        
+        // Let queued API calls finish before the final write
+        if (economyService != null) {
+            getServer().getServicesManager().unregister(economyService);
+            economyService.shutdown();
+        }
+        
+        // Stop the flusher and write all player data synchronously before shutdown
         if (dataManager != null) {
-            dataManager.saveData();
+            dataManager.shutdown();
         }
         getLogger().info("EcoPlus has been disabled!");
     }
@@ -57,6 +105,10 @@ public class EcoPlus extends JavaPlugin {
         return dataManager;
     }
     
+    public EconomyService getEconomyService() {
+        return economyService;
+    }
+    
     public ConfigManager getConfigManager() {
         return configManager;
     }
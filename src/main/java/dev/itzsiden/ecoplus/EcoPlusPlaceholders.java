@@ -39,16 +39,40 @@ public class EcoPlusPlaceholders extends PlaceholderExpansion {
     
     @Override
     public String onRequest(OfflinePlayer player, @NotNull String params) {
+        LeaderboardSnapshot leaderboard = dataManager.getLeaderboard();
+        
+        // %ecoplus_top_name_<n>% and %ecoplus_top_balance_<n>%
+        String topValue = leaderboard.getValue(params);
+        if (topValue == null && params.regionMatches(true, 0, "top_", 0, 4)) {
+            topValue = leaderboard.getValue(params.toLowerCase());
+        }
+        if (topValue != null) {
+            return topValue;
+        }
+        
         if (player == null) {
             return "";
         }
         
-        String playerName = player.getName();
-        if (playerName == null || !dataManager.playerExists(playerName)) {
+        // %ecoplus_rank%
+        if (params.equalsIgnoreCase("rank")) {
+            int rank = leaderboard.getRank(player.getUniqueId());
+            if (rank == 0 && !dataManager.isBounded()) {
+                // Not online when the snapshot was taken, the ranking answers in O(log N).
+                // With storage.cache-size that would be a query, so only the snapshot is used.
+                rank = dataManager.getRank(player.getUniqueId());
+            }
+            return rank > 0 ? String.valueOf(rank) : plugin.getConfigManager().getUnrankedText();
+        }
+        
+        // Placeholders are resolved on the main thread, an account that isn't in memory
+        // isn't read from storage for them
+        DataManager.PlayerData account = dataManager.getLoadedAccount(player.getUniqueId());
+        if (account == null) {
             return "0";
         }
         
-        double balance = dataManager.getBalance(playerName);
+        double balance = account.getBalance();
         
         // %ecoplus_eco%
         if (params.equalsIgnoreCase("eco")) {
@@ -57,12 +81,12 @@ public class EcoPlusPlaceholders extends PlaceholderExpansion {
         
         // %ecoplus_eco_formatted%
         if (params.equalsIgnoreCase("eco_formatted")) {
-            return dataManager.formatBalance(balance);
+            return dataManager.formatBalance(account);
         }
         
         // %ecoplus_eco_shorthand%
         if (params.equalsIgnoreCase("eco_shorthand")) {
-            return dataManager.formatBalanceShorthand(balance);
+            return dataManager.formatBalanceShorthand(account);
         }
         
         return null;
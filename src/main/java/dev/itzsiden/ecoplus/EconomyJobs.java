@@ -0,0 +1,123 @@
+package dev.itzsiden.ecoplus;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+// Interest, wealth tax and inactivity decay from the jobs section of config.yml. Each run is a
+// single DataManager.applyComputed pass over every account. When each job last ran is kept in
+// data/jobs.yml, so restarts don't reset the intervals.
+public class EconomyJobs {
+    
+    private final EcoPlus plugin;
+    private final DataManager dataManager;
+    private final File stateFile;
+    private YamlConfiguration state;
+    private BukkitTask task;
+    
+    public EconomyJobs(EcoPlus plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.stateFile = new File(new File(plugin.getDataFolder(), "data"), "jobs.yml");
+    }
+    
+    public void start() {
+        stop();
+        if (dataManager.isBounded()) {
+            ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+            if (settings.interestEnabled || settings.taxEnabled || settings.decayEnabled) {
+                plugin.getLogger().warning("Interest, tax and decay need every account in memory and don't run with storage.cache-size");
+            }
+            return;
+        }
+        
+        state = YamlConfiguration.loadConfiguration(stateFile);
+        // Checked once a minute, off the main thread since a run holds every account
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::runDue, 20L * 60, 20L * 60);
+    }
+    
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    private synchronized void runDue() {
+        if (dataManager.isLoading()) {
+            return;
+        }
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        if (settings.interestEnabled && isDue("interest", settings.interestInterval)) {
+            long minBalance = Money.toUnits(settings.interestMinBalance);
+            BigDecimal rate = percent(settings.interestRate);
+            run("interest", AuditLog.Type.INTEREST, (uuid, units) ->
+                units > 0 && units >= minBalance ? share(units, rate) : 0);
+        }
+        if (settings.taxEnabled && isDue("tax", settings.taxInterval)) {
+            long threshold = Money.toUnits(settings.taxThreshold);
+            BigDecimal rate = percent(settings.taxRate);
+            run("tax", AuditLog.Type.TAX, (uuid, units) ->
+                units > threshold ? -share(units - threshold, rate) : 0);
+        }
+        if (settings.decayEnabled && isDue("decay", settings.decayInterval)) {
+            long now = System.currentTimeMillis();
+            long inactiveMillis = TimeUnit.DAYS.toMillis(settings.decayInactiveDays);
+            BigDecimal rate = percent(settings.decayRate);
+            LastSeen lastSeen = dataManager.getLastSeen();
+            run("decay", AuditLog.Type.DECAY, (uuid, units) -> {
+                if (units <= 0 || dataManager.isOnline(uuid) || now - lastSeen.get(uuid, now) < inactiveMillis) {
+                    return 0;
+                }
+                return -share(units, rate);
+            });
+        }
+    }
+    
+    // The first check after a job is enabled only starts its interval
+    private boolean isDue(String job, int intervalHours) {
+        long now = System.currentTimeMillis();
+        long lastRun = state.getLong(job + ".last-run", 0);
+        if (lastRun == 0) {
+            setLastRun(job, now);
+            return false;
+        }
+        return now - lastRun >= TimeUnit.HOURS.toMillis(intervalHours);
+    }
+    
+    private void run(String job, AuditLog.Type type, DataManager.AccountChange change) {
+        // Recorded first, a failing run shouldn't be retried every minute
+        setLastRun(job, System.currentTimeMillis());
+        
+        long start = System.nanoTime();
+        DataManager.BatchResult result = dataManager.applyComputed(type, change);
+        plugin.getLogger().info(String.format("Applied %s to %d accounts (+%.2f -%.2f) in %d ms", job,
+            result.getApplied(), result.getCredited(), result.getDebited(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+    
+    private void setLastRun(String job, long time) {
+        state.set(job + ".last-run", time);
+        try {
+            state.save(stateFile);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save " + stateFile.getName() + ": " + e.getMessage());
+        }
+    }
+    
+    private static BigDecimal percent(double rate) {
+        return BigDecimal.valueOf(rate).movePointLeft(2);
+    }
+    
+    // Rounded down to whole units, so a job never moves more than the rate allows
+    private static long share(long units, BigDecimal rate) {
+        return BigDecimal.valueOf(units).multiply(rate).setScale(0, RoundingMode.DOWN).longValueExact();
+    }
+}
\ No newline at end of file
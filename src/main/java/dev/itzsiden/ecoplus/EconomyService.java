@@ -0,0 +1,177 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Asynchronous API for other plugins, registered with the ServicesManager:
+//   EconomyService economy = Bukkit.getServicesManager().load(EconomyService.class);
+// Operations run on the economy threads, never on the caller's. Operations on the same account
+// run in the order they were submitted, so callers can queue many without waiting for each one.
+public class EconomyService {
+    
+    private final DataManager dataManager;
+    private final ExecutorService executor;
+    // Last queued operation per account, later ones on that account start after it
+    private final Map<UUID, CompletableFuture<?>> tails;
+    // Set under the tails lock, nothing is queued after it
+    private boolean closed;
+    
+    public EconomyService(DataManager dataManager, int threads) {
+        this.dataManager = dataManager;
+        this.tails = new HashMap<>();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "EcoPlus-Economy-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Runs what's already queued, operations submitted afterwards fail
+    public void shutdown() {
+        // Queued operations only reach the executor once the ones before them finish, so wait
+        // for the last one on every account before the executor stops taking work
+        CompletableFuture<?>[] outstanding;
+        synchronized (tails) {
+            closed = true;
+            outstanding = tails.values().toArray(new CompletableFuture[0]);
+        }
+        try {
+            CompletableFuture.allOf(outstanding).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // A failed operation was already reported to its caller, a timeout means we give up
+        }
+        
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Completes with null if the account doesn't exist
+    public CompletableFuture<DataManager.PlayerData> getAccount(UUID uuid) {
+        return submit(() -> dataManager.getAccount(uuid), uuid);
+    }
+    
+    public CompletableFuture<Double> getBalance(UUID uuid) {
+        return submit(() -> dataManager.getBalance(uuid), uuid);
+    }
+    
+    public CompletableFuture<Boolean> has(UUID uuid, double amount) {
+        return submit(() -> {
+            DataManager.PlayerData data = dataManager.getAccount(uuid);
+            return data != null && data.getBalanceUnits() >= Money.toUnits(amount);
+        }, uuid);
+    }
+    
+    // False if the account doesn't exist or the deposit would take it over max balance,
+    // nothing is credited then
+    public CompletableFuture<Boolean> deposit(UUID uuid, double amount) {
+        if (!validAmount(amount)) {
+            return invalidAmount(amount);
+        }
+        return submit(() -> dataManager.addBalanceIfRoom(uuid, amount), uuid);
+    }
+    
+    // False if the account doesn't exist or can't cover the amount
+    public CompletableFuture<Boolean> withdraw(UUID uuid, double amount) {
+        if (!validAmount(amount)) {
+            return invalidAmount(amount);
+        }
+        return submit(() -> dataManager.removeBalance(uuid, amount), uuid);
+    }
+    
+    public CompletableFuture<DataManager.TransferResult> transfer(UUID from, UUID to, double amount) {
+        if (!validAmount(amount)) {
+            return invalidAmount(amount);
+        }
+        return submit(() -> dataManager.transfer(from, to, amount), from, to);
+    }
+    
+    // See DataManager.applyBatch, the batch waits for queued operations on all of its accounts
+    public CompletableFuture<DataManager.BatchResult> applyBatch(Map<UUID, Double> changes, boolean atomic) {
+        Map<UUID, Double> copy = new HashMap<>(changes);
+        for (Double amount : copy.values()) {
+            if (amount == null || !Money.inRange(amount)) {
+                return invalidAmount(amount);
+            }
+        }
+        return submit(() -> dataManager.applyBatch(copy, atomic), copy.keySet());
+    }
+    
+    public CompletableFuture<List<DataManager.PlayerData>> getTop(int limit) {
+        return submit(() -> new ArrayList<>(dataManager.getTopBalances(limit)));
+    }
+    
+    private static boolean validAmount(double amount) {
+        return amount > 0 && Money.inRange(amount);
+    }
+    
+    private static <T> CompletableFuture<T> invalidAmount(Double amount) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalArgumentException("Invalid amount: " + amount));
+        return future;
+    }
+    
+    private <T> CompletableFuture<T> submit(Supplier<T> task, UUID... accounts) {
+        List<UUID> list = new ArrayList<>(accounts.length);
+        for (UUID account : accounts) {
+            list.add(account);
+        }
+        return submit(task, list);
+    }
+    
+    private <T> CompletableFuture<T> submit(Supplier<T> task, Collection<UUID> accounts) {
+        CompletableFuture<T> result;
+        synchronized (tails) {
+            if (closed) {
+                CompletableFuture<T> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new IllegalStateException("EcoPlus is shutting down"));
+                return rejected;
+            }
+            
+            List<CompletableFuture<?>> previous = new ArrayList<>();
+            previous.add(dataManager.whenLoaded());
+            for (UUID account : accounts) {
+                CompletableFuture<?> tail = tails.get(account);
+                if (tail != null) {
+                    previous.add(tail);
+                }
+            }
+            
+            // Only the order matters, a failed earlier operation doesn't fail this one
+            result = CompletableFuture.allOf(previous.toArray(new CompletableFuture[0]))
+                .handle((ignored, error) -> null)
+                .thenApplyAsync(ignored -> task.get(), executor);
+            for (UUID account : accounts) {
+                tails.put(account, result);
+            }
+        }
+        
+        CompletableFuture<T> queued = result;
+        queued.whenComplete((value, error) -> {
+            synchronized (tails) {
+                for (UUID account : accounts) {
+                    tails.remove(account, queued);
+                }
+            }
+        });
+        return queued;
+    }
+}
\ No newline at end of file
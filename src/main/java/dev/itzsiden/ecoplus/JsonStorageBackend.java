@@ -0,0 +1,338 @@
+package dev.itzsiden.ecoplus;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Keeps every account resident: snapshots (player_data.json, or player_data.dat in the
+// binary format) plus a journal of flushed batches, folded back into the snapshot
+// once the journal grows too large
+public class JsonStorageBackend implements StorageBackend {
+    
+    private static final String JSON_SNAPSHOT = "player_data.json";
+    private static final String BINARY_SNAPSHOT = "player_data.dat";
+    
+    private final EcoPlus plugin;
+    private final AccountStore accounts;
+    // A consistent copy of the store, the snapshot must not catch a transfer or batch half applied
+    private final Supplier<List<DataManager.PlayerData>> consistentCopy;
+    private final boolean binary;
+    private final boolean compress;
+    private final SnapshotFile snapshot;
+    // The snapshot in the format that isn't configured, only read to convert it
+    private final SnapshotFile otherSnapshot;
+    private final TransactionJournal journal;
+    private final Object saveLock;
+    
+    public JsonStorageBackend(EcoPlus plugin, File dataFolder, AccountStore accounts, Supplier<List<DataManager.PlayerData>> consistentCopy) {
+        this.plugin = plugin;
+        this.accounts = accounts;
+        this.consistentCopy = consistentCopy;
+        
+        ConfigManager.Settings settings = plugin.getConfigManager().getSettings();
+        String format = settings.snapshotFormat;
+        if (!format.equalsIgnoreCase("json") && !format.equalsIgnoreCase("binary")) {
+            plugin.getLogger().warning("Unknown snapshot format '" + format + "', using json");
+        }
+        this.binary = format.equalsIgnoreCase("binary");
+        this.compress = settings.snapshotCompression;
+        File jsonFile = new File(dataFolder, JSON_SNAPSHOT);
+        File binaryFile = new File(dataFolder, BINARY_SNAPSHOT);
+        this.snapshot = new SnapshotFile(binary ? binaryFile : jsonFile);
+        this.otherSnapshot = new SnapshotFile(binary ? jsonFile : binaryFile);
+        this.journal = new TransactionJournal(new File(dataFolder, "player_data.journal"), plugin.getLogger());
+        this.saveLock = new Object();
+    }
+    
+    @Override
+    public void load(AccountStore into) throws IOException {
+        synchronized (saveLock) {
+            // Create data directory if it doesn't exist
+            File dataFolder = snapshot.getFile().getParentFile();
+            if (!dataFolder.exists()) {
+                dataFolder.mkdirs();
+            }
+            
+            journal.open();
+            
+            // Records are parsed one at a time straight into the store, there is no second copy
+            into.clear();
+            
+            // After the snapshot format was switched the data is still in the other file
+            boolean converting = !snapshot.exists() && otherSnapshot.exists();
+            SnapshotFile source = converting ? otherSnapshot : snapshot;
+            boolean snapshotExists = source.exists();
+            
+            // Load the last snapshot, falling back to the previous generation if it's damaged
+            if (snapshotExists && !readSnapshot(source.getFile(), into)) {
+                into.clear();
+                if (readSnapshot(source.getPreviousFile(), into)) {
+                    plugin.getLogger().warning("Loaded the previous generation of " + source.getFile().getName() + " instead");
+                } else {
+                    into.clear();
+                    preserveDamagedSnapshot(source);
+                }
+            }
+            
+            // Replay everything journaled since that snapshot
+            int replayed = journal.replay((uuid, playerName, balance) -> into.put(uuid, playerName, Money.toUnits(balance)));
+            if (replayed > 0) {
+                plugin.getLogger().info("Replayed " + replayed + " journal entries");
+            }
+            
+            if (converting) {
+                convertedFrom(source);
+            } else if (!snapshotExists) {
+                writeSnapshot(); // Save the store to create proper JSON structure
+                plugin.getLogger().info("Created new " + snapshot.getFile().getName() + " file");
+            }
+        }
+    }
+    
+    @Override
+    public boolean saveDirty(Collection<DataManager.PlayerData> dirty) {
+        if (!journal.writeBatch(dirty)) {
+            return false;
+        }
+        
+        // Fold the journal back into the snapshot once it grows large enough
+        if (journal.size() >= plugin.getConfigManager().getJournalCompactSize() * 1024L) {
+            compact();
+        }
+        return true;
+    }
+    
+    @Override
+    public DataManager.PlayerData get(UUID uuid) {
+        int slot = accounts.find(uuid);
+        return slot >= 0 ? accounts.snapshot(slot) : null;
+    }
+    
+    @Override
+    public DataManager.PlayerData getByName(String playerName) {
+        int slot = accounts.findByName(playerName);
+        return slot >= 0 ? accounts.snapshot(slot) : null;
+    }
+    
+    @Override
+    public List<DataManager.PlayerData> getTop(int offset, int limit) {
+        List<DataManager.PlayerData> top = accounts.top(offset + limit);
+        return offset < top.size() ? top.subList(offset, top.size()) : Collections.<DataManager.PlayerData>emptyList();
+    }
+    
+    @Override
+    public int count() {
+        return accounts.size();
+    }
+    
+    @Override
+    public int countRicher(long units) {
+        return accounts.countRicher(units);
+    }
+    
+    @Override
+    public void close() {
+        compact();
+        journal.close();
+    }
+    
+    // Writes a fresh snapshot and drops the journal records it now covers
+    public void compact() {
+        synchronized (saveLock) {
+            try {
+                journal.rotate();
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to rotate player_data.journal: " + e.getMessage());
+                return;
+            }
+            
+            if (writeSnapshot()) {
+                journal.retireRotated();
+            }
+        }
+    }
+    
+    // Whether a snapshot in either format exists in the folder
+    public static boolean hasSnapshot(File dataFolder) {
+        return new SnapshotFile(new File(dataFolder, JSON_SNAPSHOT)).exists()
+            || new SnapshotFile(new File(dataFolder, BINARY_SNAPSHOT)).exists();
+    }
+    
+    // Writes the configured format and sets the old file aside, so switching back later
+    // can't pick up its stale balances
+    private void convertedFrom(SnapshotFile source) {
+        List<DataManager.PlayerData> all = consistentCopy.get();
+        if (!writeSnapshot(all)) {
+            return;
+        }
+        // The old file is the only other copy, it stays in place unless the new one reads back the same
+        if (!readsBack(all)) {
+            plugin.getLogger().severe(snapshot.getFile().getName() + " didn't read back the same as " + source.getFile().getName()
+                + ", keeping " + source.getFile().getName() + " in place");
+            return;
+        }
+        
+        File converted = new File(source.getFile().getParentFile(), source.getFile().getName() + ".converted");
+        try {
+            if (source.getFile().exists()) {
+                Files.move(source.getFile().toPath(), converted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(source.getPreviousFile().toPath());
+            plugin.getLogger().info("Converted " + source.getFile().getName() + " to " + snapshot.getFile().getName()
+                + ", the old file was kept as " + converted.getName());
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to set aside " + source.getFile().getName() + ": " + e.getMessage());
+        }
+    }
+    
+    private boolean writeSnapshot() {
+        return writeSnapshot(consistentCopy.get());
+    }
+    
+    private boolean writeSnapshot(List<DataManager.PlayerData> all) {
+        try {
+            snapshot.write(binary ? output -> BinarySnapshot.write(output, all, compress) : output -> {
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                writer.setIndent("  ");
+                writer.beginObject();
+                for (DataManager.PlayerData data : all) {
+                    writer.name(data.getUuid().toString()).beginObject();
+                    writer.name("name").value(data.getName());
+                    writer.name("balance").value(Money.toDouble(data.getBalanceUnits()));
+                    writer.endObject();
+                }
+                writer.endObject();
+                writer.flush();
+            });
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save " + snapshot.getFile().getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Decodes the snapshot just written and compares every account with what was encoded
+    private boolean readsBack(List<DataManager.PlayerData> written) {
+        AccountStore decoded = new AccountStore();
+        if (!readSnapshot(snapshot.getFile(), decoded) || decoded.size() != written.size()) {
+            return false;
+        }
+        for (DataManager.PlayerData data : written) {
+            int slot = decoded.find(data.getUuid());
+            if (slot < 0 || !data.getName().equals(decoded.getName(slot)) || decoded.getUnits(slot) != data.getBalanceUnits()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean readSnapshot(File source, AccountStore into) {
+        if (!source.exists()) {
+            return false;
+        }
+        
+        try {
+            snapshot.read(source, input -> {
+                // Either format can be read from either file name, the body says which it is
+                BufferedInputStream buffered = new BufferedInputStream(input, 65536);
+                if (BinarySnapshot.isBinary(buffered)) {
+                    BinarySnapshot.read(buffered, into);
+                    return;
+                }
+                
+                JsonReader reader = new JsonReader(new InputStreamReader(buffered, StandardCharsets.UTF_8));
+                if (reader.peek() == JsonToken.NULL) {
+                    return;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    readAccount(reader.nextName(), reader, into);
+                }
+                reader.endObject();
+            });
+            return true;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            plugin.getLogger().severe("Failed to load " + source.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // Accounts are keyed by uuid and carry their name. Files from older versions
+    // are keyed by name and carry the uuid instead, those are migrated on the fly.
+    private void readAccount(String key, JsonReader reader, AccountStore into) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        
+        String name = null;
+        String uuidString = null;
+        double balance = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("name")) {
+                name = reader.nextString();
+            } else if (field.equals("uuid")) {
+                uuidString = reader.nextString();
+            } else if (field.equals("balance")) {
+                balance = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        UUID uuid;
+        if (name != null) {
+            uuid = parseUuid(key);
+        } else {
+            name = key;
+            uuid = parseUuid(uuidString);
+        }
+        if (uuid == null) {
+            // Same uuid the server hands out to the player in offline mode
+            uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            plugin.getLogger().warning("Account " + name + " has no valid uuid, using " + uuid);
+        }
+        
+        int existing = into.find(uuid);
+        if (existing >= 0) {
+            // Old files could hold the same player under several names
+            plugin.getLogger().warning("Merging account " + name + " into " + into.getName(existing) + " (same uuid " + uuid + ")");
+            into.setUnits(existing, into.getUnits(existing) + Money.toUnits(balance));
+        } else {
+            into.insert(uuid, name, Money.toUnits(balance));
+        }
+    }
+    
+    private static UUID parseUuid(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private void preserveDamagedSnapshot(SnapshotFile damaged) {
+        File source = damaged.getFile().exists() ? damaged.getFile() : damaged.getPreviousFile();
+        File copy = new File(source.getParentFile(), source.getName() + ".damaged-" + System.currentTimeMillis());
+        try {
+            Files.copy(source.toPath(), copy.toPath());
+            plugin.getLogger().severe("No usable " + damaged.getFile().getName() + " generation found, kept a copy as " + copy.getName());
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to copy damaged " + source.getName() + ": " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
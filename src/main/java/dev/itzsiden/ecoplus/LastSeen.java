@@ -0,0 +1,96 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// When each account holder was last online, for inactivity decay. Kept apart from the
+// balances in data/last_seen.dat so no storage format has to change.
+public class LastSeen {
+    
+    private static final int VERSION = 1;
+    // A join or quit only marks the file changed, it's written at most this often
+    private static final long SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    
+    private final EcoPlus plugin;
+    private final SnapshotFile file;
+    private final Map<UUID, Long> times;
+    private volatile boolean changed;
+    private volatile long lastSave;
+    
+    public LastSeen(EcoPlus plugin, File file) {
+        this.plugin = plugin;
+        this.file = new SnapshotFile(file);
+        this.times = new ConcurrentHashMap<>();
+    }
+    
+    public void seen(UUID uuid) {
+        times.put(uuid, System.currentTimeMillis());
+        changed = true;
+    }
+    
+    // Accounts without a time yet count as seen now, so nobody decays right after an upgrade
+    public long get(UUID uuid, long now) {
+        Long time = times.putIfAbsent(uuid, now);
+        if (time == null) {
+            changed = true;
+            return now;
+        }
+        return time;
+    }
+    
+    public void load() {
+        times.clear();
+        if (!file.exists()) {
+            return;
+        }
+        
+        File source = file.getFile().exists() ? file.getFile() : file.getPreviousFile();
+        try {
+            file.read(source, input -> {
+                DataInputStream data = new DataInputStream(input);
+                if (data.readInt() > VERSION) {
+                    throw new IOException("written by a newer version of the plugin");
+                }
+                int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    times.put(new UUID(data.readLong(), data.readLong()), data.readLong());
+                }
+            });
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to load " + source.getName() + ", inactivity starts counting from now: " + e.getMessage());
+            times.clear();
+        }
+    }
+    
+    public synchronized void saveIfChanged() {
+        if (changed && System.currentTimeMillis() - lastSave >= SAVE_INTERVAL) {
+            save();
+        }
+    }
+    
+    public synchronized void save() {
+        changed = false;
+        lastSave = System.currentTimeMillis();
+        try {
+            file.write(output -> {
+                DataOutputStream data = new DataOutputStream(output);
+                Map<UUID, Long> copy = new HashMap<>(times);
+                data.writeInt(VERSION);
+                data.writeInt(copy.size());
+                for (Map.Entry<UUID, Long> entry : copy.entrySet()) {
+                    data.writeLong(entry.getKey().getMostSignificantBits());
+                    data.writeLong(entry.getKey().getLeastSignificantBits());
+                    data.writeLong(entry.getValue());
+                }
+                data.flush();
+            });
+        } catch (IOException e) {
+            changed = true;
+            plugin.getLogger().severe("Failed to save " + file.getFile().getName() + ": " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
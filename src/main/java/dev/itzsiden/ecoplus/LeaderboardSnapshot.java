@@ -0,0 +1,38 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+// Immutable view of the leaderboard for placeholders. It is rebuilt on an
+// interval and swapped in whole, so readers never sort or scan accounts.
+public class LeaderboardSnapshot {
+    
+    public static final LeaderboardSnapshot EMPTY = new LeaderboardSnapshot(
+        Collections.<String, String>emptyMap(), Collections.<UUID, Integer>emptyMap(), 0L);
+    
+    // Keyed by the placeholder params, e.g. "top_name_1" and "top_balance_1"
+    private final Map<String, String> values;
+    private final Map<UUID, Integer> ranks;
+    private final long createdAt;
+    
+    public LeaderboardSnapshot(Map<String, String> values, Map<UUID, Integer> ranks, long createdAt) {
+        this.values = Collections.unmodifiableMap(values);
+        this.ranks = Collections.unmodifiableMap(ranks);
+        this.createdAt = createdAt;
+    }
+    
+    public String getValue(String params) {
+        return values.get(params);
+    }
+    
+    // 0 if the player wasn't captured in this snapshot
+    public int getRank(UUID uuid) {
+        Integer rank = ranks.get(uuid);
+        return rank != null ? rank : 0;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
\ No newline at end of file
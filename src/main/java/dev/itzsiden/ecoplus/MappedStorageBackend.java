@@ -0,0 +1,221 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+// Keeps every account resident and mirrors the store in a memory-mapped file of fixed-size
+// records, record n holding AccountStore slot n. Saving writes the changed records in place and
+// forces them to disk, nothing is serialised. Writes reach the page cache straight away, so a
+// plugin crash loses nothing flushed, but a machine crash can lose or tear the last batch.
+public class MappedStorageBackend implements StorageBackend {
+    
+    private static final int MAGIC = 0x45504d4d; // "EPMM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT_OFFSET = 12;
+    
+    // uuid (16), balance in fixed-point units (8), name length (1), name in UTF-8
+    private static final int RECORD_SIZE = 64;
+    private static final int BALANCE_OFFSET = 16;
+    private static final int NAME_OFFSET = 25;
+    private static final int MAX_NAME_BYTES = RECORD_SIZE - NAME_OFFSET;
+    private static final int MIN_CAPACITY = 1024;
+    
+    private final EcoPlus plugin;
+    private final File file;
+    private final AccountStore accounts;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+    
+    public MappedStorageBackend(EcoPlus plugin, File file, AccountStore accounts) {
+        this.plugin = plugin;
+        this.file = file;
+        this.accounts = accounts;
+    }
+    
+    @Override
+    public synchronized void load(AccountStore into) throws IOException {
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        close();
+        
+        boolean created = !file.exists() || file.length() == 0;
+        raf = new RandomAccessFile(file, "rw");
+        if (created) {
+            map(MIN_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.force();
+            plugin.getLogger().info("Created new " + file.getName() + " file");
+        } else {
+            map((int) Math.max(MIN_CAPACITY, (raf.length() - HEADER_SIZE) / RECORD_SIZE));
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(file.getName() + " is not a balance file");
+            }
+            if (buffer.getInt(4) > VERSION || buffer.getInt(8) != RECORD_SIZE) {
+                throw new IOException(file.getName() + " was written by a newer version of the plugin");
+            }
+        }
+        count = Math.min(buffer.getInt(COUNT_OFFSET), capacity);
+        
+        // Slots are handed out in order into the empty store, so they line up with the
+        // records unless a record was unused or a duplicate
+        into.clear();
+        boolean aligned = true;
+        for (int record = 0; record < count; record++) {
+            int offset = HEADER_SIZE + record * RECORD_SIZE;
+            int nameLength = buffer.get(offset + NAME_OFFSET - 1) & 0xff;
+            if (nameLength == 0 || nameLength > MAX_NAME_BYTES) {
+                aligned = false;
+                continue;
+            }
+            UUID uuid = new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+            byte[] name = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                name[i] = buffer.get(offset + NAME_OFFSET + i);
+            }
+            int slot = into.insert(uuid, new String(name, StandardCharsets.UTF_8), buffer.getLong(offset + BALANCE_OFFSET));
+            if (slot != record) {
+                aligned = false;
+            }
+        }
+        
+        if (!aligned) {
+            plugin.getLogger().warning("Rewriting " + file.getName() + " to drop unused and duplicate records");
+            count = 0;
+            for (int slot = 0; slot < into.limit(); slot++) {
+                DataManager.PlayerData data = into.snapshot(slot);
+                if (data != null) {
+                    writeRecord(slot, data);
+                }
+            }
+            buffer.putInt(COUNT_OFFSET, count);
+            buffer.force();
+        }
+    }
+    
+    @Override
+    public synchronized boolean saveDirty(Collection<DataManager.PlayerData> dirty) {
+        if (buffer == null) {
+            return false;
+        }
+        
+        try {
+            for (DataManager.PlayerData data : dirty) {
+                // Accounts imported from another storage aren't in the store yet
+                int slot = accounts.find(data.getUuid());
+                if (slot < 0) {
+                    slot = accounts.insert(data.getUuid(), data.getName(), data.getBalanceUnits());
+                }
+                writeRecord(slot, data);
+            }
+            buffer.putInt(COUNT_OFFSET, count);
+            buffer.force();
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private void writeRecord(int slot, DataManager.PlayerData data) throws IOException {
+        if (slot >= capacity) {
+            map(Math.max(slot + 1, capacity * 2));
+        }
+        
+        int offset = HEADER_SIZE + slot * RECORD_SIZE;
+        buffer.putLong(offset, data.getUuid().getMostSignificantBits());
+        buffer.putLong(offset + 8, data.getUuid().getLeastSignificantBits());
+        buffer.putLong(offset + BALANCE_OFFSET, data.getBalanceUnits());
+        byte[] name = encodeName(data.getName());
+        buffer.put(offset + NAME_OFFSET - 1, (byte) name.length);
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(offset + NAME_OFFSET + i, name[i]);
+        }
+        count = Math.max(count, slot + 1);
+    }
+    
+    // Player names are at most 16 characters, anything longer is cut at a character boundary
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int end = name.length();
+        while (bytes.length > MAX_NAME_BYTES) {
+            end--;
+            if (Character.isLowSurrogate(name.charAt(end)) && end > 0) {
+                end--;
+            }
+            bytes = name.substring(0, end).getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+    
+    // Mapping past the end grows the file. The old mapping is released once it's collected.
+    private void map(int records) throws IOException {
+        long size = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file.getName() + " can't hold more than " + (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE + " accounts");
+        }
+        if (buffer != null) {
+            buffer.force();
+        }
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = records;
+    }
+    
+    @Override
+    public DataManager.PlayerData get(UUID uuid) {
+        int slot = accounts.find(uuid);
+        return slot >= 0 ? accounts.snapshot(slot) : null;
+    }
+    
+    @Override
+    public DataManager.PlayerData getByName(String playerName) {
+        int slot = accounts.findByName(playerName);
+        return slot >= 0 ? accounts.snapshot(slot) : null;
+    }
+    
+    @Override
+    public List<DataManager.PlayerData> getTop(int offset, int limit) {
+        List<DataManager.PlayerData> top = accounts.top(offset + limit);
+        return offset < top.size() ? top.subList(offset, top.size()) : Collections.<DataManager.PlayerData>emptyList();
+    }
+    
+    @Override
+    public int count() {
+        return accounts.size();
+    }
+    
+    @Override
+    public int countRicher(long units) {
+        return accounts.countRicher(units);
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to close " + file.getName() + ": " + e.getMessage());
+            }
+            raf = null;
+        }
+    }
+}
\ No newline at end of file
@@ -1,6 +1,5 @@
 package dev.itzsiden.ecoplus;
 
-import org.bukkit.ChatColor;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
@@ -8,12 +7,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MessageManager {
     
     private final EcoPlus plugin;
     private File messagesFile;
     private FileConfiguration messagesConfig;
+    // Compiled from messagesConfig on load and reload, replaced as a whole
+    private volatile Map<String, MessageTemplate> templates;
     
     public MessageManager(EcoPlus plugin) {
         this.plugin = plugin;
@@ -27,38 +34,71 @@ public class MessageManager {
             plugin.saveResource("messages.yml", false);
         }
         
+        readMessages();
+    }
+    
+    public void reloadMessages() {
+        readMessages();
+    }
+    
+    // The bundled messages.yml backs every key the user's file doesn't have, e.g. ones added by an update
+    private void readMessages() {
         messagesConfig = YamlConfiguration.loadConfiguration(messagesFile);
         
-        // Load defaults
         InputStream defConfigStream = plugin.getResource("messages.yml");
         if (defConfigStream != null) {
             YamlConfiguration defConfig = YamlConfiguration.loadConfiguration(new InputStreamReader(defConfigStream));
             messagesConfig.setDefaults(defConfig);
         }
+        
+        compileTemplates();
     }
     
-    public void reloadMessages() {
-        messagesConfig = YamlConfiguration.loadConfiguration(messagesFile);
+    // Bakes in the prefix and currency from config, so reload the config first
+    private void compileTemplates() {
+        Map<String, String> constants = getConstants();
+        Map<String, MessageTemplate> compiled = new HashMap<>();
+        // getKeys leaves out keys that are only in the defaults
+        Set<String> paths = new LinkedHashSet<>(messagesConfig.getKeys(true));
+        if (messagesConfig.getDefaults() != null) {
+            paths.addAll(messagesConfig.getDefaults().getKeys(true));
+        }
+        for (String path : paths) {
+            if (messagesConfig.isString(path)) {
+                compiled.put(path, MessageTemplate.compile(messagesConfig.getString(path), constants));
+            }
+        }
+        
+        // Unknown paths are compiled on first use
+        templates = new ConcurrentHashMap<>(compiled);
+    }
+    
+    private Map<String, String> getConstants() {
+        ConfigManager config = plugin.getConfigManager();
+        Map<String, String> constants = new LinkedHashMap<>();
+        constants.put("{prefix}", config.getPrefix());
+        constants.put("{currency}", config.getCurrencyName());
+        constants.put("{symbol}", config.getCurrencySymbol());
+        return constants;
+    }
+    
+    private MessageTemplate getTemplate(String path) {
+        Map<String, MessageTemplate> current = templates;
+        MessageTemplate template = current.get(path);
+        if (template == null) {
+            // Without an explicit default getString falls back to the bundled messages
+            String message = messagesConfig.getString(path);
+            template = MessageTemplate.compile(message != null ? message : "&cMessage not found: " + path, getConstants());
+            current.put(path, template);
+        }
+        return template;
     }
     
     public String getMessage(String path) {
-        String message = messagesConfig.getString(path, "&cMessage not found: " + path);
-        return ChatColor.translateAlternateColorCodes('&', message);
+        return getTemplate(path).render();
     }
     
     public String getMessage(String path, String... replacements) {
-        String message = getMessage(path);
-        
-        // Replace prefix
-        message = message.replace("{prefix}", plugin.getConfigManager().getPrefix());
-        message = message.replace("{currency}", plugin.getConfigManager().getCurrencyName());
-        message = message.replace("{symbol}", plugin.getConfigManager().getCurrencySymbol());
-        
-        // Replace custom placeholders in pairs
-        for (int i = 0; i < replacements.length - 1; i += 2) {
-            message = message.replace(replacements[i], replacements[i + 1]);
-        }
-        
-        return ChatColor.translateAlternateColorCodes('&', message);
+        return getTemplate(path).render(replacements);
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package dev.itzsiden.ecoplus;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// A message from messages.yml split into literal text and {placeholder} slots.
+// Colour codes and config constants are resolved once when it's compiled.
+public class MessageTemplate {
+    
+    private final String[] literals;
+    private final String[] slots;
+    private final int length;
+    
+    private MessageTemplate(String[] literals, String[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int total = 0;
+        for (String literal : literals) {
+            total += literal.length();
+        }
+        this.length = total;
+    }
+    
+    public static MessageTemplate compile(String message, Map<String, String> constants) {
+        for (Map.Entry<String, String> constant : constants.entrySet()) {
+            message = message.replace(constant.getKey(), constant.getValue());
+        }
+        message = ChatColor.translateAlternateColorCodes('&', message);
+        
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int start = 0;
+        int open = message.indexOf('{');
+        while (open >= 0) {
+            int close = slotEnd(message, open);
+            if (close < 0) {
+                open = message.indexOf('{', open + 1);
+                continue;
+            }
+            literals.add(message.substring(start, open));
+            slots.add(message.substring(open, close + 1));
+            start = close + 1;
+            open = message.indexOf('{', start);
+        }
+        literals.add(message.substring(start));
+        
+        return new MessageTemplate(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+    
+    // Index of the closing brace if a placeholder name starts at open, otherwise -1
+    private static int slotEnd(String message, int open) {
+        for (int i = open + 1; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '}') {
+                return i > open + 1 ? i : -1;
+            }
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    // Replacements come in pairs, e.g. "{player}", name. Slots without one are kept as written.
+    public String render(String... replacements) {
+        if (slots.length == 0) {
+            return literals[0];
+        }
+        
+        StringBuilder builder = new StringBuilder(length + slots.length * 16);
+        builder.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(lookup(slots[i], replacements)).append(literals[i + 1]);
+        }
+        return builder.toString();
+    }
+    
+    private static String lookup(String slot, String[] replacements) {
+        for (int i = 0; i < replacements.length - 1; i += 2) {
+            if (slot.equals(replacements[i])) {
+                return replacements[i + 1];
+            }
+        }
+        return slot;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package dev.itzsiden.ecoplus;
+
+// Balances are kept as whole minor units so they can live in an AtomicLong.
+// Four decimal places is more than any decimal-places setting displays.
+public final class Money {
+    
+    public static final long SCALE = 10000L;
+    // Largest amount, either sign, whose units still fit a long
+    public static final double MAX_AMOUNT = Long.MAX_VALUE / SCALE;
+    
+    private Money() {
+    }
+    
+    // Rounds to the nearest unit, values beyond the long range saturate
+    public static long toUnits(double amount) {
+        return Math.round(amount * SCALE);
+    }
+    
+    // False for NaN and for amounts whose units would saturate
+    public static boolean inRange(double amount) {
+        return Math.abs(amount) <= MAX_AMOUNT;
+    }
+    
+    public static double toDouble(long units) {
+        return units / (double) SCALE;
+    }
+}
\ No newline at end of file
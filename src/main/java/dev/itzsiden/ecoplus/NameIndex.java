@@ -0,0 +1,50 @@
+package dev.itzsiden.ecoplus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Account names sorted case-insensitively for prefix lookups. Finding the first k names with a
+// prefix is O(log N + k) and doesn't touch the rest of the index. Each name is kept once, as the
+// player spells it, names differing only in case share an entry.
+public class NameIndex {
+    
+    private final ConcurrentSkipListSet<String> names;
+    
+    public NameIndex() {
+        this.names = new ConcurrentSkipListSet<>(String.CASE_INSENSITIVE_ORDER);
+    }
+    
+    public void add(String name) {
+        names.add(name);
+    }
+    
+    public void remove(String name) {
+        names.remove(name);
+    }
+    
+    public void rename(String oldName, String newName) {
+        remove(oldName);
+        add(newName);
+    }
+    
+    public void clear() {
+        names.clear();
+    }
+    
+    public int size() {
+        return names.size();
+    }
+    
+    // Up to limit names starting with prefix, ignoring case, in alphabetical order
+    public List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(Math.min(limit, 16));
+        for (String name : names.tailSet(prefix)) {
+            if (matches.size() >= limit || !name.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            matches.add(name);
+        }
+        return matches;
+    }
+}
\ No newline at end of file
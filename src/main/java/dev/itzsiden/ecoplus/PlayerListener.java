@@ -1,11 +1,16 @@
 package dev.itzsiden.ecoplus;
 
+import org.bukkit.ChatColor;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
 public class PlayerListener implements Listener {
     
     private final DataManager dataManager;
@@ -16,24 +21,33 @@ public class PlayerListener implements Listener {
         this.configManager = configManager;
     }
     
+    // Runs off the main thread, so a login arriving during startup or a reload can
+    // simply wait until the player's stored balance is in memory. With storage.cache-size
+    // the account is read here too, so the join doesn't wait on storage.
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (!dataManager.awaitLoaded(30, TimeUnit.SECONDS)) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
+                ChatColor.RED + "Economy data is still loading, please try again in a moment.");
+            return;
+        }
+        dataManager.preload(event.getUniqueId());
+    }
+    
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(PlayerJoinEvent event) {
         String playerName = event.getPlayer().getName();
-        String uuid = event.getPlayer().getUniqueId().toString();
-        
-        // Load or create player data with starting balance from config
-        boolean isNewPlayer = !dataManager.playerExists(playerName);
-        DataManager.PlayerData data = dataManager.getPlayerData(playerName, uuid);
+        UUID uuid = event.getPlayer().getUniqueId();
         
-        // If new player, save immediately
-        if (isNewPlayer) {
-            dataManager.saveData();
-        }
+        // Load or create player data with starting balance from config, picking up name changes.
+        // A new account is marked dirty and written by the next flush, like any other change.
+        dataManager.setOnline(uuid, true);
+        dataManager.getPlayerData(uuid, playerName);
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
-        // Save data when player leaves (safety measure)
-        dataManager.saveData();
+        // The account may leave the working set again once it's written
+        dataManager.setOnline(event.getPlayer().getUniqueId(), false);
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public class SnapshotFile {
+    
+    // Fixed width so it can be overwritten in place once the body checksum is known
+    private static final String HEADER_FORMAT = "#EcoPlus-Snapshot v1 crc32=%08x length=%016d\n";
+    private static final int HEADER_LENGTH = String.format(HEADER_FORMAT, 0L, 0L).length();
+    
+    private final File file;
+    private final File previousFile;
+    private final File tempFile;
+    
+    public SnapshotFile(File file) {
+        this.file = file;
+        this.previousFile = new File(file.getParentFile(), file.getName() + ".prev");
+        this.tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public File getPreviousFile() {
+        return previousFile;
+    }
+    
+    public boolean exists() {
+        return file.exists() || previousFile.exists();
+    }
+    
+    public void write(BodyWriter body) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            FileChannel channel = output.getChannel();
+            BufferedOutputStream buffered = new BufferedOutputStream(output, 64 * 1024);
+            buffered.write(String.format(HEADER_FORMAT, 0L, 0L).getBytes(StandardCharsets.US_ASCII));
+            
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32());
+            body.write(checked);
+            checked.flush();
+            
+            long length = channel.size() - HEADER_LENGTH;
+            String header = String.format(HEADER_FORMAT, checked.getChecksum().getValue(), length);
+            channel.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)), 0);
+            channel.force(true);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        
+        // Keep the last good generation around without ever taking the current one away, then
+        // rename the new one over it
+        if (file.exists()) {
+            keepPrevious();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+    
+    private void keepPrevious() throws IOException {
+        Files.deleteIfExists(previousFile.toPath());
+        try {
+            Files.createLink(previousFile.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // No hard links on this file system
+            Files.copy(file.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    // Makes the rename itself durable. Not every platform can open a directory, there the
+    // rename is as durable as the file system makes it.
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // ignored
+        }
+    }
+    
+    public void read(File source, BodyReader body) throws IOException {
+        try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(source), 64 * 1024)) {
+            input.mark(HEADER_LENGTH);
+            if (input.read() != '#') {
+                // Written before checksums were added, nothing to verify
+                input.reset();
+                body.read(input);
+                return;
+            }
+            
+            input.reset();
+            byte[] headerBytes = new byte[HEADER_LENGTH];
+            if (input.read(headerBytes) != HEADER_LENGTH) {
+                throw new IOException("truncated header");
+            }
+            String[] header = new String(headerBytes, StandardCharsets.US_ASCII).trim().split(" ");
+            if (header.length != 4 || !header[2].startsWith("crc32=") || !header[3].startsWith("length=")) {
+                throw new IOException("unrecognised header");
+            }
+            long expectedChecksum = Long.parseLong(header[2].substring(6), 16);
+            long expectedLength = Long.parseLong(header[3].substring(7));
+            
+            if (source.length() - HEADER_LENGTH != expectedLength) {
+                throw new IOException("expected " + expectedLength + " bytes but found " + (source.length() - HEADER_LENGTH));
+            }
+            
+            CheckedInputStream checked = new CheckedInputStream(input, new CRC32());
+            body.read(checked);
+            
+            // The parser may stop before the end of the stream, the checksum covers every byte
+            byte[] drain = new byte[8192];
+            while (checked.read(drain) != -1) {
+                // keep reading
+            }
+            
+            if (checked.getChecksum().getValue() != expectedChecksum) {
+                throw new IOException("checksum mismatch");
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("unrecognised header");
+        }
+    }
+    
+    public interface BodyWriter {
+        void write(OutputStream output) throws IOException;
+    }
+    
+    public interface BodyReader {
+        void read(InputStream input) throws IOException;
+    }
+}
\ No newline at end of file
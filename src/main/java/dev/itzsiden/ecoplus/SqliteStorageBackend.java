@@ -0,0 +1,186 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Row per account in an embedded SQLite file, balances in fixed-point units. The driver
+// ships with the server, so there is nothing to shade.
+public class SqliteStorageBackend implements StorageBackend {
+    
+    private final EcoPlus plugin;
+    private final File databaseFile;
+    private Connection connection;
+    
+    public SqliteStorageBackend(EcoPlus plugin, File databaseFile) {
+        this.plugin = plugin;
+        this.databaseFile = databaseFile;
+    }
+    
+    private synchronized Connection getConnection() throws SQLException {
+        if (connection != null && !connection.isClosed()) {
+            return connection;
+        }
+        
+        if (!databaseFile.getParentFile().exists()) {
+            databaseFile.getParentFile().mkdirs();
+        }
+        
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not available", e);
+        }
+        
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS accounts ("
+                + "uuid TEXT PRIMARY KEY, "
+                + "name TEXT NOT NULL, "
+                + "balance INTEGER NOT NULL)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_accounts_name ON accounts (name COLLATE NOCASE)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_accounts_balance ON accounts (balance DESC)");
+        }
+        return connection;
+    }
+    
+    private static DataManager.PlayerData readAccount(ResultSet result) throws SQLException {
+        return DataManager.PlayerData.fromUnits(UUID.fromString(result.getString(1)), result.getString(2), result.getLong(3));
+    }
+    
+    @Override
+    public synchronized void load(AccountStore into) throws IOException {
+        into.clear();
+        try (Statement statement = getConnection().createStatement();
+             ResultSet result = statement.executeQuery("SELECT uuid, name, balance FROM accounts")) {
+            while (result.next()) {
+                into.put(UUID.fromString(result.getString(1)), result.getString(2), result.getLong(3));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized boolean saveDirty(Collection<DataManager.PlayerData> dirty) {
+        String sql = "INSERT INTO accounts (uuid, name, balance) VALUES (?, ?, ?) "
+            + "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, balance = excluded.balance";
+        
+        try {
+            Connection conn = getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                for (DataManager.PlayerData data : dirty) {
+                    statement.setString(1, data.getUuid().toString());
+                    statement.setString(2, data.getName());
+                    statement.setLong(3, data.getBalanceUnits());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to save player data to " + databaseFile.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public synchronized DataManager.PlayerData get(UUID uuid) {
+        try (PreparedStatement statement = getConnection().prepareStatement(
+                "SELECT uuid, name, balance FROM accounts WHERE uuid = ?")) {
+            statement.setString(1, uuid.toString());
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next()) {
+                    return readAccount(result);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to query " + databaseFile.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    @Override
+    public synchronized DataManager.PlayerData getByName(String playerName) {
+        try (PreparedStatement statement = getConnection().prepareStatement(
+                "SELECT uuid, name, balance FROM accounts WHERE name = ? COLLATE NOCASE LIMIT 1")) {
+            statement.setString(1, playerName);
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next()) {
+                    return readAccount(result);
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to query " + databaseFile.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    @Override
+    public synchronized List<DataManager.PlayerData> getTop(int offset, int limit) {
+        List<DataManager.PlayerData> top = new ArrayList<>();
+        try (PreparedStatement statement = getConnection().prepareStatement(
+                "SELECT uuid, name, balance FROM accounts ORDER BY balance DESC LIMIT ? OFFSET ?")) {
+            statement.setInt(1, limit);
+            statement.setInt(2, offset);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    top.add(readAccount(result));
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to query " + databaseFile.getName() + ": " + e.getMessage());
+        }
+        return top;
+    }
+    
+    @Override
+    public synchronized int count() {
+        try (Statement statement = getConnection().createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM accounts")) {
+            return result.next() ? result.getInt(1) : 0;
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to query " + databaseFile.getName() + ": " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    @Override
+    public synchronized int countRicher(long units) {
+        try (PreparedStatement statement = getConnection().prepareStatement(
+                "SELECT COUNT(*) FROM accounts WHERE balance > ?")) {
+            statement.setLong(1, units);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Failed to query " + databaseFile.getName() + ": " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Failed to close " + databaseFile.getName() + ": " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface StorageBackend {
+    
+    // Replaces the contents of the store with every stored account
+    void load(AccountStore into) throws IOException;
+    
+    // Persists the given accounts as one batch, either all of them or none
+    boolean saveDirty(Collection<DataManager.PlayerData> dirty);
+    
+    // Looks up a single stored account, null if there is none
+    DataManager.PlayerData get(UUID uuid);
+    
+    // Case-insensitive, null if there is none
+    DataManager.PlayerData getByName(String playerName);
+    
+    // Highest balances first, skipping the first offset
+    List<DataManager.PlayerData> getTop(int offset, int limit);
+    
+    // How many accounts are stored
+    int count();
+    
+    // How many stored accounts hold more than the given balance, in fixed-point units
+    int countRicher(long units);
+    
+    void close();
+}
\ No newline at end of file
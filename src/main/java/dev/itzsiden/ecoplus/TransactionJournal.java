@@ -0,0 +1,217 @@
+package dev.itzsiden.ecoplus;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+public class TransactionJournal {
+    
+    // One line per account: type, player name, uuid, resulting balance.
+    // A batch only counts once its commit line with the record count follows.
+    private static final char TYPE_BALANCE = 'B';
+    private static final char TYPE_COMMIT = 'C';
+    private static final char SEPARATOR = '\t';
+    
+    private final File file;
+    private final File rotatedFile;
+    private final File previousFile;
+    private final Logger logger;
+    
+    private FileOutputStream output;
+    private Writer writer;
+    private long size;
+    
+    public TransactionJournal(File file, Logger logger) {
+        this.file = file;
+        this.rotatedFile = new File(file.getParentFile(), file.getName() + ".old");
+        this.previousFile = new File(file.getParentFile(), file.getName() + ".prev");
+        this.logger = logger;
+    }
+    
+    public synchronized void open() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        
+        output = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        size = file.length();
+    }
+    
+    public boolean writeBatch(Collection<DataManager.PlayerData> batch) {
+        synchronized (this) {
+            if (writer == null) {
+                logger.severe("Cannot append to " + file.getName() + ", it isn't open");
+                return false;
+            }
+            
+            StringBuilder builder = new StringBuilder(batch.size() * 64);
+            for (DataManager.PlayerData data : batch) {
+                builder.append(TYPE_BALANCE).append(SEPARATOR)
+                    .append(data.getName()).append(SEPARATOR)
+                    .append(data.getUuid()).append(SEPARATOR)
+                    .append(data.getBalance()).append('\n');
+            }
+            builder.append(TYPE_COMMIT).append(SEPARATOR).append(batch.size()).append('\n');
+            
+            try {
+                writer.write(builder.toString());
+                size += builder.length();
+            } catch (IOException e) {
+                logger.severe("Failed to append to " + file.getName() + ": " + e.getMessage());
+                return false;
+            }
+        }
+        
+        return sync();
+    }
+    
+    public boolean sync() {
+        FileOutputStream target;
+        synchronized (this) {
+            if (writer == null) {
+                return true;
+            }
+            
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                logger.severe("Failed to flush " + file.getName() + ": " + e.getMessage());
+                return false;
+            }
+            target = output;
+        }
+        
+        // Force outside the lock so appends from the main thread never wait on the disk
+        try {
+            target.getChannel().force(false);
+            return true;
+        } catch (ClosedChannelException e) {
+            // Rotated meanwhile, closing the stream already forced it
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to sync " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    public synchronized long size() {
+        return size;
+    }
+    
+    public synchronized void rotate() throws IOException {
+        closeWriter();
+        
+        if (file.exists()) {
+            if (rotatedFile.exists()) {
+                // A previous compaction didn't finish, keep its records in front of the new ones
+                Files.write(rotatedFile.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+                Files.delete(file.toPath());
+            } else if (!file.renameTo(rotatedFile)) {
+                throw new IOException("Could not rotate " + file.getName());
+            }
+        }
+        
+        open();
+    }
+    
+    // Called once a snapshot covering the rotated records is on disk. They are still
+    // needed if that snapshot turns out damaged and the previous generation is loaded.
+    public void retireRotated() {
+        if (previousFile.exists() && !previousFile.delete()) {
+            logger.warning("Could not delete " + previousFile.getName());
+            return;
+        }
+        if (rotatedFile.exists() && !rotatedFile.renameTo(previousFile)) {
+            logger.warning("Could not rename " + rotatedFile.getName());
+        }
+    }
+    
+    public synchronized void close() {
+        try {
+            closeWriter();
+        } catch (IOException e) {
+            logger.severe("Failed to close " + file.getName() + ": " + e.getMessage());
+        }
+    }
+    
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            output.getChannel().force(false);
+            writer.close();
+            writer = null;
+            output = null;
+        }
+    }
+    
+    public int replay(RecordHandler handler) {
+        synchronized (this) {
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    logger.severe("Failed to flush " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        // Older records first so later balances win
+        return replayFile(previousFile, handler) + replayFile(rotatedFile, handler) + replayFile(file, handler);
+    }
+    
+    private int replayFile(File source, RecordHandler handler) {
+        if (!source.exists()) {
+            return 0;
+        }
+        
+        int applied = 0;
+        int skipped = 0;
+        List<String[]> uncommitted = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(String.valueOf(SEPARATOR));
+                char type = parts[0].length() == 1 ? parts[0].charAt(0) : 0;
+                
+                if (type == TYPE_BALANCE && parts.length == 4) {
+                    uncommitted.add(parts);
+                } else if (type == TYPE_COMMIT && parts.length == 2 && parts[1].equals(String.valueOf(uncommitted.size()))) {
+                    for (String[] record : uncommitted) {
+                        try {
+                            handler.apply(UUID.fromString(record[2]), record[1], Double.parseDouble(record[3]));
+                            applied++;
+                        } catch (IllegalArgumentException e) {
+                            skipped++;
+                        }
+                    }
+                    uncommitted.clear();
+                } else {
+                    // Damaged line, drop the batch it belongs to
+                    skipped += uncommitted.size() + 1;
+                    uncommitted.clear();
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to replay " + source.getName() + ": " + e.getMessage());
+        }
+        
+        // Usually a batch torn by a crash mid-append
+        skipped += uncommitted.size();
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " unreadable or uncommitted records in " + source.getName());
+        }
+        return applied;
+    }
+    
+    public interface RecordHandler {
+        void apply(UUID uuid, String playerName, double balance);
+    }
+}
\ No newline at end of file
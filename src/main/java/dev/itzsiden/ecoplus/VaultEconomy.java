@@ -0,0 +1,297 @@
+package dev.itzsiden.ecoplus;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+
+import java.util.Collections;
+import java.util.List;
+
+// Vault provider, calls go straight to DataManager and are persisted by the flusher like any
+// other change. Worlds are ignored, EcoPlus has one balance per player and no banks.
+// While balances are loading transactions fail and lookups find no account.
+public class VaultEconomy implements Economy {
+    
+    private static final String LOADING = "Balances are still loading";
+    
+    private final EcoPlus plugin;
+    private final DataManager dataManager;
+    
+    public VaultEconomy(EcoPlus plugin, DataManager dataManager) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return plugin.isEnabled();
+    }
+    
+    @Override
+    public String getName() {
+        return "EcoPlus";
+    }
+    
+    @Override
+    public boolean hasBankSupport() {
+        return false;
+    }
+    
+    @Override
+    public int fractionalDigits() {
+        return plugin.getConfigManager().getDecimalPlaces();
+    }
+    
+    @Override
+    public String format(double amount) {
+        return dataManager.formatBalance(amount) + " " + plugin.getConfigManager().getCurrencySymbol();
+    }
+    
+    @Override
+    public String currencyNamePlural() {
+        return plugin.getConfigManager().getCurrencyName();
+    }
+    
+    @Override
+    public String currencyNameSingular() {
+        return plugin.getConfigManager().getCurrencyName();
+    }
+    
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return !dataManager.isLoading() && dataManager.playerExists(player.getUniqueId());
+    }
+    
+    @Override
+    public boolean hasAccount(String playerName) {
+        return !dataManager.isLoading() && dataManager.playerExists(playerName);
+    }
+    
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return hasAccount(player);
+    }
+    
+    @Override
+    public boolean hasAccount(String playerName, String worldName) {
+        return hasAccount(playerName);
+    }
+    
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        return dataManager.isLoading() ? 0 : dataManager.getBalance(player.getUniqueId());
+    }
+    
+    @Override
+    public double getBalance(String playerName) {
+        return dataManager.isLoading() ? 0 : dataManager.getBalance(playerName);
+    }
+    
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return getBalance(player);
+    }
+    
+    @Override
+    public double getBalance(String playerName, String world) {
+        return getBalance(playerName);
+    }
+    
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        if (dataManager.isLoading()) {
+            return false;
+        }
+        DataManager.PlayerData data = dataManager.getAccount(player.getUniqueId());
+        return data != null && data.getBalanceUnits() >= Money.toUnits(amount);
+    }
+    
+    @Override
+    public boolean has(String playerName, double amount) {
+        return !dataManager.isLoading() && dataManager.hasBalance(playerName, amount);
+    }
+    
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return has(player, amount);
+    }
+    
+    @Override
+    public boolean has(String playerName, String worldName, double amount) {
+        return has(playerName, amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        return withdraw(dataManager.getAccount(player.getUniqueId()), amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+        return withdraw(dataManager.getAccount(playerName), amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return withdrawPlayer(player, amount);
+    }
+    
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+        return withdrawPlayer(playerName, amount);
+    }
+    
+    private EconomyResponse withdraw(DataManager.PlayerData account, double amount) {
+        if (invalidAmount(amount)) {
+            return failure(amount, 0, "Cannot withdraw negative funds");
+        }
+        if (dataManager.isLoading()) {
+            return failure(amount, 0, LOADING);
+        }
+        if (account == null) {
+            return failure(amount, 0, "Account doesn't exist");
+        }
+        if (!dataManager.removeBalance(account.getUuid(), amount)) {
+            return failure(amount, dataManager.getBalance(account.getUuid()), "Insufficient funds");
+        }
+        return success(amount, dataManager.getBalance(account.getUuid()));
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        return deposit(dataManager.getAccount(player.getUniqueId()), amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+        return deposit(dataManager.getAccount(playerName), amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return depositPlayer(player, amount);
+    }
+    
+    @Override
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+        return depositPlayer(playerName, amount);
+    }
+    
+    // Refused rather than clamped at max balance, the caller would otherwise lose the difference
+    private EconomyResponse deposit(DataManager.PlayerData account, double amount) {
+        if (invalidAmount(amount)) {
+            return failure(amount, 0, "Cannot deposit negative funds");
+        }
+        if (dataManager.isLoading()) {
+            return failure(amount, 0, LOADING);
+        }
+        if (account == null) {
+            return failure(amount, 0, "Account doesn't exist");
+        }
+        if (!dataManager.addBalanceIfRoom(account.getUuid(), amount)) {
+            return failure(amount, dataManager.getBalance(account.getUuid()), "Deposit would exceed the maximum balance");
+        }
+        return success(amount, dataManager.getBalance(account.getUuid()));
+    }
+    
+    private static boolean invalidAmount(double amount) {
+        return !(amount >= 0) || Double.isInfinite(amount);
+    }
+    
+    private static EconomyResponse success(double amount, double balance) {
+        return new EconomyResponse(amount, balance, EconomyResponse.ResponseType.SUCCESS, null);
+    }
+    
+    private static EconomyResponse failure(double amount, double balance, String message) {
+        return new EconomyResponse(amount, balance, EconomyResponse.ResponseType.FAILURE, message);
+    }
+    
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        if (dataManager.isLoading() || player.getName() == null || dataManager.playerExists(player.getUniqueId())) {
+            return false;
+        }
+        dataManager.getPlayerData(player.getUniqueId(), player.getName());
+        return true;
+    }
+    
+    // Accounts are keyed by uuid, one can't be created from a name alone
+    @Override
+    public boolean createPlayerAccount(String playerName) {
+        return false;
+    }
+    
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return createPlayerAccount(player);
+    }
+    
+    @Override
+    public boolean createPlayerAccount(String playerName, String worldName) {
+        return createPlayerAccount(playerName);
+    }
+    
+    @Override
+    public EconomyResponse createBank(String name, String player) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse deleteBank(String name) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse bankBalance(String name) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse isBankOwner(String name, String playerName) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse isBankMember(String name, String playerName) {
+        return noBanks();
+    }
+    
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+        return noBanks();
+    }
+    
+    @Override
+    public List<String> getBanks() {
+        return Collections.emptyList();
+    }
+    
+    private static EconomyResponse noBanks() {
+        return new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "EcoPlus does not support banks");
+    }
+}
\ No newline at end of file